@@ -0,0 +1,142 @@
+package source;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Background thread that regularly saves the dirty unpinned pages of the buffer pool, so that a frame chosen for
+ * eviction rarely needs a write before being reused. Pages are written sorted by (fileIdx, pageIdx), neighbouring
+ * pages of a file being merged into a single vectored write.
+ */
+class BackgroundWriter implements Runnable {
+    private static BackgroundWriter instance = null;
+    private Thread thread = null;
+    private volatile boolean running = false;
+    //copies of the pages being written, slices of a single off-heap buffer allocated once
+    private ByteBuffer[] copies;
+    private PageId[] pageIds;
+
+    private BackgroundWriter() {
+    }
+
+    static BackgroundWriter getInstance()
+    {
+        if(instance == null)
+            instance = new BackgroundWriter();
+        return instance;
+    }
+
+    /**
+     * Start the writer thread, unless it is disabled in the configuration or useless in memory-mapped storage mode
+     */
+    void start()
+    {
+        if(running || Constants.getWriterInterval() <= 0 || Constants.isMappedStorage())
+            return;
+        int batchSize = Constants.getWriterBatchSize();
+        ByteBuffer arena = ByteBuffer.allocateDirect(batchSize * Constants.getPageSize());
+        copies = new ByteBuffer[batchSize];
+        pageIds = new PageId[batchSize];
+        for(int i = 0; i < batchSize; i++)
+            copies[i] = arena.slice(i * Constants.getPageSize(), Constants.getPageSize());
+        running = true;
+        thread = new Thread(this, "background-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop the writer thread once its current batch is written
+     */
+    void stop()
+    {
+        if(!running)
+            return;
+        //the thread isn't interrupted since it would close the channel it may be writing to
+        synchronized(this)
+        {
+            running = false;
+            notifyAll();
+        }
+        try
+        {
+            thread.join();
+        }catch(InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        while(running)
+        {
+            synchronized(this)
+            {
+                try
+                {
+                    //woken up early by stop()
+                    if(running)
+                        wait(Constants.getWriterInterval());
+                }catch(InterruptedException ie)
+                {
+                    return;
+                }
+            }
+            if(running)
+                cleanDirtyPages();
+        }
+    }
+
+    /**
+     * Write one batch of dirty pages
+     */
+    private void cleanDirtyPages()
+    {
+        int count = BufferManager.getInstance().collectDirtyPages(copies, pageIds);
+        if(count == 0)
+            return;
+        try
+        {
+            sortPages(count);
+            //merge the runs of consecutive pages of the same file
+            int runStart = 0;
+            for(int i = 1; i <= count; i++)
+            {
+                boolean sameRun = i < count && pageIds[i].getFileIdx() == pageIds[i-1].getFileIdx()
+                        && pageIds[i].getPageIdx() == pageIds[i-1].getPageIdx() + 1;
+                if(!sameRun)
+                {
+                    DiskManager.getInstance().writePages(pageIds[runStart], copies, runStart, i - runStart);
+                    runStart = i;
+                }
+            }
+        }finally
+        {
+            BufferManager.getInstance().writesCompleted(pageIds, count);
+        }
+    }
+
+    /**
+     * Sort the copied pages by (fileIdx, pageIdx) with an insertion sort, a batch being small
+     * @param count number of copied pages
+     */
+    private void sortPages(int count)
+    {
+        for(int i = 1; i < count; i++)
+        {
+            PageId pageId = pageIds[i];
+            ByteBuffer copy = copies[i];
+            int j = i - 1;
+            while(j >= 0 && (pageIds[j].getFileIdx() > pageId.getFileIdx()
+                    || (pageIds[j].getFileIdx() == pageId.getFileIdx() && pageIds[j].getPageIdx() > pageId.getPageIdx())))
+            {
+                pageIds[j+1] = pageIds[j];
+                copies[j+1] = copies[j];
+                j--;
+            }
+            pageIds[j+1] = pageId;
+            copies[j+1] = copy;
+        }
+    }
+}
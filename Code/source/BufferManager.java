@@ -1,19 +1,43 @@
 package source;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 
 /**
  * Class that manage the page replacement issue and a efficient decision taker
  */
 class BufferManager {
     private static BufferManager instance = null;
+    //every frame of the pool, created once with its slice of the arena and reused afterwards
     private ArrayList<Frame> frameArray;
+    //off-heap memory holding the pages of every frame, allocated once for the whole pool
+    private ByteBuffer arena;
+    //number of frames already holding a page, frames are filled in order until the pool is full
+    private int usedFrameCount = 0;
+    //frames emptied while the pool was in use, given to the next pages before any page is evicted
+    private ArrayDeque<Integer> freeFrames = new ArrayDeque<>();
+    //page table : frame holding each page currently in the buffer pool
+    private HashMap<PageId, Frame> pageTable;
+    //policy choosing the frame to replace when the pool is full
+    private ReplacementPolicy policy;
+    //pages copied by the background writer whose write on disk isn't over yet
+    private HashSet<PageId> writesInProgress = new HashSet<>();
+    //number of pages being read by the prefetcher
+    private int prefetchesInProgress = 0;
+    //number of pages being read by getPage, outside of the lock
+    private int readsInProgress = 0;
     private int frameIndex = -1;
+    //returned by reserveFrame when the page has to be looked up again
+    private static final int retryReservation = -2;
 
     private BufferManager()
     {
-        this.frameArray = new ArrayList<>(0);
+        this.pageTable = new HashMap<>();
+        this.policy = createPolicy(Constants.getReplacementPolicy());
+        this.allocateArena(Constants.getFrameCount());
     }
 
     static BufferManager getInstance()
@@ -23,48 +47,190 @@ class BufferManager {
         return instance;
     }
 
-    void reset()
+    synchronized void reset()
     {
-        frameArray.clear();
+        waitForAllBackgroundIo();
+        for(Frame frame : frameArray)
+            frame.assign(null);
+        pageTable.clear();
+        freeFrames.clear();
+        policy.reset();
+        usedFrameCount = 0;
         frameIndex = -1;
     }
 
+    /**
+     * Remove from the pool the pages of a file from a page on, without saving them, before the end of the file is
+     * cut. The pages of the other files, and the pages of this file before the cut, stay in the pool.
+     * @param fileIdx       file index
+     * @param firstPageIdx  index of the first removed page
+     * @throws IllegalStateException if one of these pages is still pinned
+     */
+    synchronized void discardPages(int fileIdx, int firstPageIdx)
+    {
+        //the background writer mustn't write one of them back once the file has been cut
+        waitForAllBackgroundIo();
+        for(int i = 0; i < usedFrameCount; i++)
+        {
+            Frame frame = frameArray.get(i);
+            PageId pageId = frame.getPageId();
+            if(pageId == null || pageId.getFileIdx() != fileIdx || pageId.getPageIdx() < firstPageIdx)
+                continue;
+            if(frame.getPinCount() > 0)
+                throw new IllegalStateException("La page " + pageId.getPageIdx() + " du fichier " + fileIdx + " est en cours d'utilisation, elle ne peut pas etre retiree du buffer");
+            pageTable.remove(pageId);
+            policy.frameRemoved(frame);
+            frame.assign(null);
+            freeFrames.add(i);
+        }
+    }
+
+    /**
+     * Unpin every frame, used to recover after a command has been interrupted while pages were still in use
+     */
+    synchronized void unpinAll()
+    {
+        for(int i = 0; i < usedFrameCount; i++)
+        {
+            if(frameArray.get(i).getPinCount() > 0 && !frameArray.get(i).isLoading())
+            {
+                frameArray.get(i).setPinCount(0);
+                policy.pageUnpinned(frameArray.get(i));
+            }
+        }
+    }
+
     /**
      * Answer a page request from upper layers by delivering a associated buffer
      * @param pageId pageId of the requested page
      * @return  buffer filled with data from the page requested
+     * @throws IllegalStateException if the page isn't in the pool and every frame is pinned
      */
     ByteBuffer getPage(PageId pageId)
     {
-        boolean isNewFrame = false;
-        //"soon to be" replaced frame
-        Frame replacedFrame;
-        //if the page is already in a frame
-        boolean pageFound = this.findPage(pageId);
-        //Frame (Index) chosen in comparePage method if found
-        if(!pageFound) {
-            //Look if there is space available for a new frame
-            if (frameArray.size() < Constants.getFrameCount()) {
-                frameArray.add(new Frame(pageId));
-                frameIndex = frameArray.size() - 1;
-                isNewFrame = true;
-            }
-            //We have to replace a frame (page and buffer content) by a new one -> Clock
-            else {
-                //set new frameIndex
-                this.getClockChoice();
-                //write on disk last page of the frame if modified
-                replacedFrame = frameArray.get(frameIndex);
-                if (replacedFrame.isValdirty()) {
-                    DiskManager.getInstance().writePage(replacedFrame.getPageId(), replacedFrame.getBuffer());
+        return getPage(pageId, null);
+    }
+
+    /**
+     * Answer a page request from upper layers by delivering a associated buffer, a bulk read gives its own ring so
+     * that the pages it loads only recycle the frames of the ring instead of evicting the whole pool. A page which
+     * isn't in the pool is read without holding the lock, so that the reads of several threads are done at the same
+     * time, its frame being pinned and marked as loading meanwhile.
+     * @param pageId pageId of the requested page
+     * @param ring   ring of the bulk read, null for a regular access
+     * @return  buffer filled with data from the page requested
+     * @throws IllegalStateException if the page isn't in the pool and every frame is pinned
+     */
+    ByteBuffer getPage(PageId pageId, BufferRing ring)
+    {
+        Frame frame = pinPage(pageId, ring);
+        if(frame.isLoading())
+        {
+            DiskManager.getInstance().readPage(pageId, frame.getBuffer());
+            readCompleted(frame);
+        }
+        return frame.getBuffer();
+    }
+
+    /**
+     * Pin the frame holding a page, a frame being reserved for the page if it isn't in the pool. The frame is marked
+     * as loading if the page has to be read by the calling thread, its buffer not holding the page yet.
+     * @param pageId pageId of the requested page
+     * @param ring   ring of the bulk read, null for a regular access
+     * @return pinned frame
+     * @throws IllegalStateException if the page isn't in the pool and every frame is pinned
+     */
+    private synchronized Frame pinPage(PageId pageId, BufferRing ring)
+    {
+        RelationStats stats = Statistics.getInstance().get(pageId.getFileIdx());
+        //every wait releases the lock, the page may have been loaded or its frame reused meanwhile by another thread
+        //so the pool is looked up again after each one
+        while(true)
+        {
+            //if the page is already in a frame
+            if(this.findPage(pageId))
+            {
+                Frame frame = frameArray.get(frameIndex);
+                //a page being read by the prefetcher or another thread is delivered once its read is over
+                if(frame.isLoading())
+                {
+                    waitForBackgroundIo();
+                    continue;
                 }
-                //Replace last frame by new one with the wanted page id
-                this.replaceFrame(frameIndex, pageId);
-                isNewFrame = true;
+                stats.hit();
+                policy.pageAccessed(frame);
+                this.loadContents(frame.getSlotIdx(), false);
+                return frame;
             }
+            //the file may not contain the last version of the page yet
+            if(writesInProgress.contains(pageId) && !Thread.currentThread().isInterrupted())
+            {
+                waitForBackgroundIo();
+                continue;
+            }
+            int chosenIndex = reserveFrame(pageId, ring);
+            if(chosenIndex == retryReservation)
+                continue;
+            //frames pinned by the prefetcher or by the reads of other threads are only pinned until the end of the read
+            if(chosenIndex == -1 && (prefetchesInProgress > 0 || readsInProgress > 0) && !Thread.currentThread().isInterrupted())
+            {
+                waitForBackgroundIo();
+                continue;
+            }
+            if(chosenIndex == -1)
+                throw new IllegalStateException("Toutes les frames du buffer sont utilisees, la page " + pageId.getPageIdx() + " du fichier " + pageId.getFileIdx() + " ne peut pas etre chargee");
+            stats.miss();
+            this.loadContents(chosenIndex, true);
+            return frameArray.get(chosenIndex);
         }
-        this.loadContents(frameIndex, isNewFrame);
-        return frameArray.get(frameIndex).getBuffer();
+    }
+
+    /**
+     * Notify the end of the read of a page by getPage, the threads waiting for it being woken up
+     * @param frame frame holding the page
+     */
+    private synchronized void readCompleted(Frame frame)
+    {
+        frame.getBuffer().rewind();
+        frame.setLoading(false);
+        readsInProgress--;
+        notifyAll();
+    }
+
+    /**
+     * Start reading a page into the pool without waiting for it, the read being done by the prefetcher threads
+     * Nothing is done if the page is already in the pool or if no frame is available right away
+     * @param pageId pageId of the page that will be requested soon
+     * @param ring   ring of the bulk read the page belongs to, null for a regular access
+     */
+    synchronized void prefetch(PageId pageId, BufferRing ring)
+    {
+        if(Constants.isMappedStorage() || pageTable.containsKey(pageId) || writesInProgress.contains(pageId))
+            return;
+        int prefetchIndex = reserveFrame(pageId, ring);
+        if(prefetchIndex < 0)
+            return;
+        Frame frame = frameArray.get(prefetchIndex);
+        //the frame stays pinned until its page has been read
+        frame.setPinCount(1);
+        frame.setLoading(true);
+        prefetchesInProgress++;
+        Statistics.getInstance().get(pageId.getFileIdx()).prefetch();
+        Prefetcher.getInstance().submit(frame);
+    }
+
+    /**
+     * Notify the end of the read of a prefetched page
+     * @param frame frame holding the prefetched page
+     */
+    synchronized void prefetchCompleted(Frame frame)
+    {
+        frame.setLoading(false);
+        frame.setPinCount(frame.getPinCount() - 1);
+        if(frame.getPinCount() == 0)
+            policy.pageUnpinned(frame);
+        prefetchesInProgress--;
+        notifyAll();
     }
 
     /**
@@ -72,103 +238,355 @@ class BufferManager {
      * @param pageId    PageId
      * @param valdirty  true if modification has been made on the buffer, else false
      */
-    void freePage(PageId pageId, boolean valdirty)
+    synchronized void freePage(PageId pageId, boolean valdirty)
     {
         if(findPage(pageId))
         {
+            Statistics.getInstance().get(pageId.getFileIdx()).unpin();
             frameArray.get(frameIndex).setPinCount(frameArray.get(frameIndex).getPinCount() - 1);
             if(frameArray.get(frameIndex).getPinCount() == 0)
             {
-                frameArray.get(frameIndex).setRefbit(1);
+                policy.pageUnpinned(frameArray.get(frameIndex));
             }
             if(!frameArray.get(frameIndex).isValdirty())
                 frameArray.get(frameIndex).setValdirty(valdirty);
         }
     }
 
+    /**
+     * @return number of frames an operator can still pin, the frames never used yet included
+     */
+    synchronized int getUnpinnedFrameCount()
+    {
+        int count = Constants.getFrameCount() - usedFrameCount;
+        for(int i = 0; i < usedFrameCount; i++)
+        {
+            if(frameArray.get(i).getPinCount() == 0)
+                count++;
+        }
+        return count;
+    }
+
     /**
      * Manage the page left in the buffers, save them into the files if needed, and reset the frames
      */
-    void flushAll()
+    synchronized void flushAll()
     {
-        for(Frame frame : frameArray)
+        waitForAllBackgroundIo();
+        if(Constants.isMappedStorage())
+            DiskManager.getInstance().forceAll();
+        else
         {
-            if(frame.isValdirty())
-                DiskManager.getInstance().writePage(frame.getPageId(),frame.getBuffer());
+            for(int i = 0; i < usedFrameCount; i++)
+            {
+                Frame frame = frameArray.get(i);
+                if(frame.isValdirty())
+                {
+                    Statistics.getInstance().get(frame.getPageId().getFileIdx()).flushedPage();
+                    DiskManager.getInstance().writePage(frame.getPageId(),frame.getBuffer());
+                }
+            }
         }
-        frameArray.clear();
+        reset();
     }
 
     /**
-     * look for a page in the list of frames and see if it already exists
+     * Change the number of frames of the buffer pool while running, a new arena is allocated and the pages that
+     * don't fit in it anymore are saved into their files if needed and evicted
+     * @param newFrameCount new number of frames
+     * @return true if the pool has been resized, else false
+     */
+    synchronized boolean resize(int newFrameCount)
+    {
+        waitForAllBackgroundIo();
+        //pinned buffers are still used by upper layers, their memory can't be moved
+        for(int i = 0; i < usedFrameCount; i++)
+        {
+            if(frameArray.get(i).getPinCount() > 0)
+            {
+                System.out.println("Impossible de redimensionner le buffer, des pages sont en cours d'utilisation");
+                return false;
+            }
+        }
+        if(!Constants.setFrameCount(newFrameCount))
+            return false;
+        //keep the frames the replacement policy would evict last
+        ArrayList<Frame> usedFrames = new ArrayList<>(usedFrameCount);
+        for(int i = 0; i < usedFrameCount; i++)
+        {
+            if(frameArray.get(i).getPageId() != null)
+                usedFrames.add(frameArray.get(i));
+        }
+        ArrayList<Frame> keptFrames = policy.retentionOrder(usedFrames);
+        while(keptFrames.size() > newFrameCount)
+            evict(keptFrames.remove(keptFrames.size() - 1));
+        allocateArena(newFrameCount);
+        //move the kept pages into the new arena along with their metadata
+        for(Frame oldFrame : keptFrames)
+        {
+            Frame frame = frameArray.get(usedFrameCount);
+            usedFrameCount++;
+            frame.assign(oldFrame.getPageId());
+            frame.setValdirty(oldFrame.isValdirty());
+            frame.setRefbit(oldFrame.getRefbit());
+            if(Constants.isMappedStorage())
+                frame.setBuffer(oldFrame.getBuffer());
+            else
+            {
+                oldFrame.getBuffer().rewind();
+                frame.getBuffer().put(oldFrame.getBuffer());
+                frame.getBuffer().rewind();
+            }
+            pageTable.put(frame.getPageId(), frame);
+        }
+        //the policy gets the pages back from the first one it would evict to the last one
+        for(int i = usedFrameCount - 1; i >= 0; i--)
+            policy.pageLoaded(frameArray.get(i));
+        return true;
+    }
+
+    /**
+     * look for a page in the page table and see if it already exists in a frame
      * @param pageId PageId of page we are looking for
      * @return boolean true if found, else false
      */
     private boolean findPage(PageId pageId)
     {
-        boolean isEqual = false;
-        if(!frameArray.isEmpty())
+        Frame frame = pageTable.get(pageId);
+        if(frame != null)
+            frameIndex = frame.getSlotIdx();
+        return frame != null;
+    }
+
+    /**
+     * Allocate the arena and create every frame of the pool with its own slice, the pool is empty afterwards
+     * No arena is needed in memory-mapped storage mode, frames point at the mapped pages instead
+     * @param frameCount    number of frames of the pool
+     */
+    private void allocateArena(int frameCount)
+    {
+        int pageSize = Constants.getPageSize();
+        arena = Constants.isMappedStorage() ? null : ByteBuffer.allocateDirect(frameCount * pageSize);
+        frameArray = new ArrayList<>(frameCount);
+        for(int i = 0; i < frameCount; i++)
+            frameArray.add(new Frame(i, arena == null ? null : arena.slice(i * pageSize, pageSize)));
+        pageTable.clear();
+        freeFrames.clear();
+        policy.reset();
+        usedFrameCount = 0;
+        frameIndex = -1;
+    }
+
+    /**
+     * Save the page of a frame into its file before the frame is reused, if it has been modified. The lock isn't
+     * released : a modified page still being written by the background writer has to be waited for beforehand
+     * @param frame "soon to be" replaced frame
+     */
+    private void evict(Frame frame)
+    {
+        RelationStats stats = Statistics.getInstance().get(frame.getPageId().getFileIdx());
+        stats.eviction();
+        //a mapped frame is the file itself, nothing has to be copied back
+        if (Constants.isMappedStorage())
+            return;
+        if (frame.isValdirty()) {
+            stats.dirtyWriteBack();
+            DiskManager.getInstance().writePage(frame.getPageId(), frame.getBuffer());
+        }
+    }
+
+    /**
+     * Copy dirty unpinned pages for the background writer, the frames are considered clean from now on and will
+     * only be dirty again if they are modified after the copy
+     * @param copies    buffers receiving the pages, one per page
+     * @param pageIds   receives the pageId of each copied page
+     * @return number of copied pages
+     */
+    synchronized int collectDirtyPages(ByteBuffer[] copies, PageId[] pageIds)
+    {
+        int count = 0;
+        for(int i = 0; i < usedFrameCount && count < copies.length; i++)
         {
-            for(int i = 0; i < frameArray.size() && !isEqual; i++)
+            Frame frame = frameArray.get(i);
+            if(frame.isValdirty() && frame.getPinCount() == 0 && !writesInProgress.contains(frame.getPageId()))
             {
-                PageId refPageId = frameArray.get(i).getPageId();
-                if(pageId.equals(refPageId))
-                {
-                    isEqual = true;
-                    frameIndex = i;
-                }
+                copies[count].clear();
+                copies[count].put(0, frame.getBuffer(), 0, Constants.getPageSize());
+                pageIds[count] = frame.getPageId();
+                frame.setValdirty(false);
+                writesInProgress.add(frame.getPageId());
+                count++;
             }
         }
-        return isEqual;
+        return count;
     }
 
     /**
-     * Apply the clock procedure on our frames list
+     * Notify the end of the writes of the pages copied by the background writer
+     * @param pageIds   pageIds of the written pages
+     * @param count     number of written pages
      */
-    private void getClockChoice()
+    synchronized void writesCompleted(PageId[] pageIds, int count)
     {
-        ArrayList<Frame> chosenFrames = frameArray;
-        frameIndex = -1;
-        while(frameIndex == -1)
+        for(int i = 0; i < count; i++)
+            writesInProgress.remove(pageIds[i]);
+        notifyAll();
+    }
+
+    /**
+     * Wait until the background writer has written a page, the lock on the buffer manager being released meanwhile
+     * @param pageId    pageId of the page
+     */
+    private void waitForWrite(PageId pageId)
+    {
+        while(writesInProgress.contains(pageId) && !Thread.currentThread().isInterrupted())
+            waitForBackgroundIo();
+    }
+
+    /**
+     * Wait until the background writer has written every page it copied and every page being read has been read
+     */
+    private void waitForAllBackgroundIo()
+    {
+        while((!writesInProgress.isEmpty() || prefetchesInProgress > 0 || readsInProgress > 0) && !Thread.currentThread().isInterrupted())
+            waitForBackgroundIo();
+    }
+
+    /**
+     * Wait until the end of any background write or page read, the lock on the buffer manager being released meanwhile
+     */
+    private void waitForBackgroundIo()
+    {
+        try
+        {
+            wait();
+        }catch(InterruptedException ie)
         {
-            for(int i = 0; i < Constants.getFrameCount(); i++)
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Choose the frame that will receive a page which isn't in the pool, save the page it held if needed and
+     * assign it to the new page. The lock is held from the choice of the frame until its assignment, so that no
+     * other thread can pin the page being evicted or choose the same frame.
+     * @param pageId pageId of the page
+     * @param ring   ring of the bulk read the page belongs to, null for a regular access
+     * @return index of the frame, -1 if every frame is pinned, retryReservation if the lock has been released to
+     * wait for the background writer and the pool has to be looked up again
+     */
+    private int reserveFrame(PageId pageId, BufferRing ring)
+    {
+        int chosenIndex;
+        //A full ring reuses its oldest frame if nobody else took it meanwhile
+        if (ring != null && (chosenIndex = ring.nextReusableFrame(frameArray)) != -1) {
+            if(mustWaitForWrite(frameArray.get(chosenIndex)))
+                return retryReservation;
+            evict(frameArray.get(chosenIndex));
+            policy.frameRemoved(frameArray.get(chosenIndex));
+        }
+        //Reuse a frame emptied by the removal of its page
+        else if (!freeFrames.isEmpty()) {
+            chosenIndex = freeFrames.poll();
+        }
+        //Look if there is an empty frame left
+        else if (usedFrameCount < Constants.getFrameCount()) {
+            chosenIndex = usedFrameCount;
+            usedFrameCount++;
+        }
+        //We have to replace a frame (page and buffer content) by a new one, chosen by the replacement policy
+        else {
+            chosenIndex = policy.chooseVictim(frameArray);
+            if(chosenIndex == -1)
+                return -1;
+            if(mustWaitForWrite(frameArray.get(chosenIndex)))
             {
-                Frame frame = chosenFrames.get(i);
-                if(frame.getPinCount() == 0)
-                {
-                    if(frame.getRefbit() == 0)
-                    {
-                        frameIndex = i;
-                        break;
-                    }
-                    else
-                        chosenFrames.get(i).setRefbit(0);
-                }
+                //the frame keeps its page, the policy puts it back where it was
+                policy.victimRejected(frameArray.get(chosenIndex));
+                return retryReservation;
             }
+            //write on disk last page of the frame if modified
+            evict(frameArray.get(chosenIndex));
+        }
+        //Reuse the frame for the wanted page id
+        this.replaceFrame(chosenIndex, pageId);
+        if(ring != null)
+            ring.add(frameArray.get(chosenIndex));
+        policy.pageLoaded(frameArray.get(chosenIndex));
+        return chosenIndex;
+    }
+
+    /**
+     * Wait for the background writer if it is still writing an older version of the modified page of a frame, which
+     * would overwrite the page saved by its eviction
+     * @param frame frame chosen to receive another page
+     * @return true if the lock has been released, the frame may have been pinned or reused meanwhile
+     */
+    private boolean mustWaitForWrite(Frame frame)
+    {
+        if(Constants.isMappedStorage() || !frame.isValdirty() || !writesInProgress.contains(frame.getPageId())
+                || Thread.currentThread().isInterrupted())
+            return false;
+        waitForWrite(frame.getPageId());
+        return true;
+    }
+
+    /**
+     * Create the replacement policy matching its name in the configuration, clock being the default one
+     * @param name  policy name
+     * @return replacement policy
+     */
+    private ReplacementPolicy createPolicy(String name)
+    {
+        switch(name)
+        {
+            case "2q":
+                return new TwoQueuePolicy();
+            case "clock":
+                return new ClockPolicy();
+            default:
+                System.out.println("Politique de remplacement inconnue : " + name + ", clock est utilisee");
+                return new ClockPolicy();
         }
     }
 
+    ReplacementPolicy getPolicy() {
+        return policy;
+    }
+
     /**
-     * Load contents of the selected frame, new or not
+     * Pin the selected frame and load its contents, new or not, the page of a new frame being only marked as loading
+     * when it has to be read from its file
      * @param frameIndex    index of the frame in the list
      * @param isNewFrame    true if the page were not in the frame list
      */
     private void loadContents(int frameIndex, boolean isNewFrame)
     {
         frameArray.get(frameIndex).setPinCount(frameArray.get(frameIndex).getPinCount()+1);
-        if(isNewFrame)
-            frameArray.get(frameIndex).setBuffer(DiskManager.getInstance().readPage(frameArray.get(frameIndex).getPageId(),frameArray.get(frameIndex).getBuffer()));
-        frameArray.set(frameIndex,frameArray.get(frameIndex));
+        //in memory-mapped storage mode the frame points straight at the mapped page, no copy is made
+        if(isNewFrame && Constants.isMappedStorage())
+            frameArray.get(frameIndex).setBuffer(DiskManager.getInstance().getMappedPage(frameArray.get(frameIndex).getPageId()));
+        //the page is read by getPage once the lock is released
+        else if(isNewFrame)
+        {
+            frameArray.get(frameIndex).setLoading(true);
+            readsInProgress++;
+            return;
+        }
         frameArray.get(frameIndex).getBuffer().rewind();
     }
 
     /**
-     * Replace an unused frame by a new one
+     * Reuse an unused frame for another page, without allocating a new frame nor a new buffer
      * @param frameIndex    index of the frame in the list
      * @param pageId        pageId
      */
     private void replaceFrame(int frameIndex, PageId pageId)
     {
-        frameArray.set(frameIndex,new Frame(pageId));
+        Frame frame = frameArray.get(frameIndex);
+        if(frame.getPageId() != null)
+            pageTable.remove(frame.getPageId());
+        frame.assign(pageId);
+        pageTable.put(pageId, frame);
     }
 }
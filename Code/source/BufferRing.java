@@ -0,0 +1,71 @@
+package source;
+
+import java.util.ArrayList;
+
+/**
+ * Small private ring of frames used by a large sequential read (scan of a relation, inner relation of a join) :
+ * once the ring is full, every new page of the read replaces the oldest page of the ring instead of a page of the
+ * shared pool, keeping the pool warm for the other accesses
+ */
+class BufferRing {
+    //index of the frames of the ring and pageId they received from the ring
+    private int[] frameIdxs;
+    private PageId[] pageIds;
+    private int position = 0;
+    private int filledCount = 0;
+
+    /**
+     * @param ringSize  number of frames of the ring, always leaving at least one frame of the pool outside of it
+     */
+    BufferRing(int ringSize)
+    {
+        int size = Math.max(1, Math.min(ringSize, Constants.getFrameCount() - 1));
+        this.frameIdxs = new int[size];
+        this.pageIds = new PageId[size];
+    }
+
+    /**
+     * Create a ring only if a relation is large enough to evict a significant part of the pool when read
+     * @param dataPageCount number of data pages to read
+     * @return a new ring, null if the relation is small enough to be read through the shared pool
+     */
+    static BufferRing forScan(int dataPageCount)
+    {
+        if(dataPageCount > Constants.getFrameCount() / 4)
+            return new BufferRing(Constants.getScanRingSize());
+        return null;
+    }
+
+    int getCapacity() {
+        return frameIdxs.length;
+    }
+
+    /**
+     * Give the frame the ring should reuse for its next page
+     * @param frames    every frame of the pool
+     * @return index of the oldest frame of the ring, -1 if the ring isn't full yet or if this frame is pinned or has
+     * been taken by another page meanwhile
+     */
+    int nextReusableFrame(ArrayList<Frame> frames)
+    {
+        if(filledCount < frameIdxs.length)
+            return -1;
+        Frame frame = frames.get(frameIdxs[position]);
+        if(frame.getPinCount() == 0 && pageIds[position].equals(frame.getPageId()))
+            return frameIdxs[position];
+        return -1;
+    }
+
+    /**
+     * Register the frame that just received a page of the read as the newest frame of the ring
+     * @param frame frame holding the new page
+     */
+    void add(Frame frame)
+    {
+        frameIdxs[position] = frame.getSlotIdx();
+        pageIds[position] = frame.getPageId();
+        position = (position + 1) % frameIdxs.length;
+        if(filledCount < frameIdxs.length)
+            filledCount++;
+    }
+}
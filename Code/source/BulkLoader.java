@@ -0,0 +1,139 @@
+package source;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Data page filled by a single loading worker : records are encoded straight into the page, handed to the appender
+ * once full, the worker then taking an empty page back.
+ * Free slots of the existing data pages are left to the regular insertions. The records of a slotted relation are
+ * parsed into a buffer of their own, then encoded into the page.
+ */
+class BulkLoader {
+    private HeapFile heapFile;
+    private RelDef reldef;
+    //full pages waiting to be appended to the file, empty pages given back by the appender
+    private BlockingQueue<ByteBuffer> fullPages;
+    private BlockingQueue<ByteBuffer> emptyPages;
+    //data page being filled, outside of the buffer pool
+    private ByteBuffer bufferDataPage = null;
+    private int recordCount = 0;
+    private byte[] emptyRecord;
+    //record being parsed in the fixed layout, null if the relation has fixed slots
+    private ByteBuffer recordBuffer = null;
+    private long loadedCount = 0;
+    private long rejectedCount = 0;
+
+    BulkLoader(HeapFile heapFile, BlockingQueue<ByteBuffer> fullPages, BlockingQueue<ByteBuffer> emptyPages)
+    {
+        this.heapFile = heapFile;
+        this.reldef = heapFile.getReldef();
+        this.fullPages = fullPages;
+        this.emptyPages = emptyPages;
+        this.emptyRecord = new byte[reldef.getRecordSize()];
+        if(reldef.isSlottedPages())
+            this.recordBuffer = ByteBuffer.allocate(reldef.getRecordSize());
+    }
+
+    /**
+     * Get the buffer where the next record has to be written : the data page being filled, an empty one being taken
+     * if needed, or the record buffer of a slotted relation
+     * @return buffer of the data page or of the record
+     * @throws InterruptedException if interrupted while waiting for an empty page
+     */
+    ByteBuffer getBuffer() throws InterruptedException
+    {
+        if(recordBuffer != null)
+            return recordBuffer;
+        if(bufferDataPage == null)
+            bufferDataPage = emptyPages.take();
+        return bufferDataPage;
+    }
+
+    /**
+     * @return position in the buffer where the next record has to be written
+     */
+    int getNextRecordPosition()
+    {
+        if(recordBuffer != null)
+            return 0;
+        return reldef.getSlotMapSize() + reldef.getRecordSize()*recordCount;
+    }
+
+    /**
+     * Mark the record written at the next position as loaded, the page being handed to the appender when it's full
+     * @throws InterruptedException if interrupted while handing the page
+     */
+    void recordWritten() throws InterruptedException
+    {
+        if(recordBuffer != null)
+        {
+            writeToSlottedPage();
+            return;
+        }
+        heapFile.setSlotUsed(bufferDataPage, recordCount, true);
+        recordCount++;
+        loadedCount++;
+        if(recordCount == reldef.getSlotCount())
+            finish();
+    }
+
+    /**
+     * Erase what has been written of a record which can't be loaded, the slot being used by the next one
+     */
+    void recordRejected()
+    {
+        ByteBuffer buffer = recordBuffer != null ? recordBuffer : bufferDataPage;
+        buffer.put(getNextRecordPosition(), emptyRecord);
+        rejectedCount++;
+    }
+
+    /**
+     * Encode the parsed record into the slotted page, the page being handed to the appender when the record doesn't
+     * fit in it anymore. A record which doesn't even fit in an empty page is rejected.
+     * @throws InterruptedException if interrupted while handing the page or waiting for an empty one
+     */
+    private void writeToSlottedPage() throws InterruptedException
+    {
+        if(bufferDataPage == null)
+            bufferDataPage = emptyPages.take();
+        boolean inserted = reldef.getSlottedPage().insert(bufferDataPage, recordBuffer, 0) >= 0;
+        //an empty page is kept for the next record
+        if(!inserted && recordCount > 0)
+        {
+            finish();
+            bufferDataPage = emptyPages.take();
+            inserted = reldef.getSlottedPage().insert(bufferDataPage, recordBuffer, 0) >= 0;
+        }
+        if(!inserted)
+        {
+            recordRejected();
+            return;
+        }
+        recordCount++;
+        loadedCount++;
+        //the strings shorter than their column don't overwrite every byte, the record is set back to 0
+        recordBuffer.put(0, emptyRecord);
+    }
+
+    /**
+     * Hand the data page to the appender, even partially filled
+     * @throws InterruptedException if interrupted while handing the page
+     */
+    void finish() throws InterruptedException
+    {
+        if(recordCount == 0)
+            return;
+        fullPages.put(bufferDataPage);
+        bufferDataPage = null;
+        recordCount = 0;
+    }
+
+    long getLoadedCount() {
+        return loadedCount;
+    }
+
+    long getRejectedCount() {
+        return rejectedCount;
+    }
+}
@@ -0,0 +1,121 @@
+package source;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Clock replacement policy : a frame is given a second chance if it has been referenced since the last sweep
+ */
+class ClockPolicy implements ReplacementPolicy {
+    //read by the JMX thread while the buffer manager counts the evictions
+    private LongAdder evictionCount = new LongAdder();
+    //index of the next frame looked at, kept from one choice to the next
+    private int hand = 0;
+    //position of the hand before the last choice and frames whose reference bit it cleared, kept until the next
+    //choice so that it can be undone
+    private int lastHand = 0;
+    private ArrayList<Frame> lastClearedFrames = new ArrayList<>();
+
+    @Override
+    public void pageLoaded(Frame frame) { }
+
+    @Override
+    public void pageAccessed(Frame frame) { }
+
+    @Override
+    public void pageUnpinned(Frame frame)
+    {
+        frame.setRefbit(1);
+    }
+
+    @Override
+    public void frameRemoved(Frame frame) { }
+
+    /**
+     * Apply the clock procedure on our frames list, starting where the last choice stopped, two full turns always
+     * find a frame unless every frame is pinned
+     */
+    @Override
+    public int chooseVictim(ArrayList<Frame> frames)
+    {
+        lastHand = hand;
+        lastClearedFrames.clear();
+        for(int step = 0; step < 2 * frames.size(); step++)
+        {
+            if(hand >= frames.size())
+                hand = 0;
+            int i = hand;
+            hand++;
+            Frame frame = frames.get(i);
+            if(frame.getPinCount() == 0)
+            {
+                if(frame.getRefbit() == 0)
+                {
+                    evictionCount.increment();
+                    return i;
+                }
+                else
+                {
+                    frame.setRefbit(0);
+                    lastClearedFrames.add(frame);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Put the hand back where the last choice started and give back their reference bit to the frames it swept
+     */
+    @Override
+    public void victimRejected(Frame frame)
+    {
+        for(Frame clearedFrame : lastClearedFrames)
+            clearedFrame.setRefbit(1);
+        lastClearedFrames.clear();
+        hand = lastHand;
+        evictionCount.decrement();
+    }
+
+    /**
+     * A sweep starting at the hand evicts the unreferenced frames first then the referenced ones, both in the order
+     * they're reached, the frames to keep are the last ones of this sweep
+     */
+    @Override
+    public ArrayList<Frame> retentionOrder(List<Frame> frames)
+    {
+        ArrayList<Frame> order = new ArrayList<>(frames.size());
+        ArrayList<Frame> referenced = new ArrayList<>();
+        for(int step = 0; step < frames.size(); step++)
+        {
+            Frame frame = frames.get((hand + step) % frames.size());
+            if(frame.getRefbit() == 0)
+                order.add(frame);
+            else
+                referenced.add(frame);
+        }
+        order.addAll(referenced);
+        Collections.reverse(order);
+        return order;
+    }
+
+    @Override
+    public void reset()
+    {
+        hand = 0;
+        lastHand = 0;
+        lastClearedFrames.clear();
+    }
+
+    @Override
+    public String getName() {
+        return "clock";
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+}
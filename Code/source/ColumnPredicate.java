@@ -0,0 +1,80 @@
+package source;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Equality between a column and a constant, evaluated on the bytes of a record in its data page so that only the
+ * matching records are decoded. A record matches when the value of the column, as displayed, equals the constant.
+ */
+class ColumnPredicate {
+    private int columnKind;
+    //position of the column in a record
+    private int columnOffset;
+    private int intValue;
+    private int floatBits;
+    private String stringValue;
+    //the constant can't be displayed by any value of the column, e.g. "007" for an int
+    private boolean matchesNothing = false;
+
+    ColumnPredicate(RelDef reldef, int colIdx, String value)
+    {
+        RowLayout layout = reldef.getLayout();
+        columnKind = layout.getKind(colIdx);
+        columnOffset = layout.getOffset(colIdx);
+        //the constant is parsed once, then compared to each record
+        try
+        {
+            if(columnKind == RowLayout.intColumn)
+            {
+                intValue = Integer.parseInt(value);
+                matchesNothing = !String.valueOf(intValue).equals(value);
+            }
+            else if(columnKind == RowLayout.floatColumn)
+            {
+                float floatValue = Float.parseFloat(value);
+                floatBits = Float.floatToIntBits(floatValue);
+                matchesNothing = !String.valueOf(floatValue).equals(value);
+            }
+            else
+            {
+                //a string is displayed with every character of its column, the unused ones being at 0
+                stringValue = value;
+                matchesNothing = value.length() != layout.getLength(colIdx);
+            }
+        }catch(NumberFormatException nf)
+        {
+            matchesNothing = true;
+        }
+    }
+
+    /**
+     * @return true if no record can match, the relation doesn't need to be read
+     */
+    boolean matchesNothing()
+    {
+        return matchesNothing;
+    }
+
+    /**
+     * Compare the column of a record to the constant without decoding the record
+     * @param bufferDataPage    buffer of the data page
+     * @param recordPosition    position of the record in the page
+     * @return true if the record matches
+     */
+    boolean matches(ByteBuffer bufferDataPage, int recordPosition)
+    {
+        if(matchesNothing)
+            return false;
+        int position = recordPosition + columnOffset;
+        if(columnKind == RowLayout.intColumn)
+            return bufferDataPage.getInt(position) == intValue;
+        if(columnKind == RowLayout.floatColumn)
+            return Float.floatToIntBits(bufferDataPage.getFloat(position)) == floatBits;
+        for(int i = 0; i < stringValue.length(); i++)
+        {
+            if(bufferDataPage.getChar(position + i*2) != stringValue.charAt(i))
+                return false;
+        }
+        return true;
+    }
+}
@@ -1,12 +1,133 @@
 package source;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Properties;
+
 /**
  * Class that contains the constants in this project
  */
 public class Constants {
     private final static int pageSize = 4096; //Valeur par défaut : 4096
-    private final static int frameCount = 2;
+    //at least 2 frames are needed since a header page and a data page can be used at the same time
+    private final static int minFrameCount = 2;
+    private static int frameCount = 2;
     private final static int intSize = 4;
+    //number of pages mapped at once by a segment in memory-mapped storage mode
+    private final static int segmentPageCount = 256;
+    private static boolean mappedStorage = false;
+    //name of the page replacement policy of the buffer pool : clock or 2q
+    private static String replacementPolicy = "clock";
+    //number of frames a large sequential read recycles instead of using the whole pool
+    private static int scanRingSize = 8;
+    //milliseconds between two batches of the background writer, 0 disables it
+    private static int writerInterval = 100;
+    //maximum number of pages written by a batch of the background writer
+    private static int writerBatchSize = 64;
+    //number of data pages read in advance by a scan, 0 disables the prefetcher
+    private static int prefetchDepth = 4;
+    //number of threads parsing a CSV file during an insertall
+    private static int loaderThreads = Runtime.getRuntime().availableProcessors();
+    //percentage of occupied space of a relation under which a delete vacuums it, 0 disables it
+    private static int vacuumThreshold = 0;
+    //number of pages of records a join can keep in memory before spilling them into temporary files
+    private static int joinMemory = 1024;
+    //number of data pages of the outer relation of a block nested loops join pinned at the same time, 0 to use every
+    //frame the inner relation doesn't need
+    private static int joinBlockSize = 0;
+    //number of threads of a parallel hash join
+    private static int joinThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Load the configuration from the dbms.properties file at the project root, if it exists, then from the
+     * "key=value" arguments given to Main, the latter taking precedence
+     * @param args  arguments given to Main after the redirection one
+     */
+    static void loadConfiguration(String[] args)
+    {
+        Properties properties = new Properties();
+        File tempFile = new File("");
+        String pathName = tempFile.getAbsoluteFile().getParentFile().getAbsolutePath() + "/dbms.properties";
+        try(FileInputStream file = new FileInputStream(pathName))
+        {
+            properties.load(file);
+        }catch(FileNotFoundException fn)
+        {
+            //no configuration file, default values are kept
+        }catch(IOException io)
+        {
+            io.printStackTrace();
+        }
+        for(String arg : args)
+        {
+            int separator = arg.indexOf('=');
+            if(separator > 0)
+                properties.setProperty(arg.substring(0, separator), arg.substring(separator + 1));
+            else
+                System.out.println("Argument ignore (format attendu cle=valeur) : " + arg);
+        }
+        for(String key : properties.stringPropertyNames())
+            setProperty(key, properties.getProperty(key).trim());
+    }
+
+    /**
+     * Set a single configuration value
+     * @param key   configuration key
+     * @param value configuration value
+     */
+    private static void setProperty(String key, String value)
+    {
+        try
+        {
+            switch(key)
+            {
+                case "frameCount":
+                    setFrameCount(Integer.parseInt(value));
+                    break;
+                case "storage":
+                    setMappedStorage(value.equals("mmap"));
+                    break;
+                case "replacementPolicy":
+                    replacementPolicy = value;
+                    break;
+                case "scanRingSize":
+                    scanRingSize = Math.max(1, Integer.parseInt(value));
+                    break;
+                case "writerInterval":
+                    writerInterval = Math.max(0, Integer.parseInt(value));
+                    break;
+                case "writerBatchSize":
+                    writerBatchSize = Math.max(1, Integer.parseInt(value));
+                    break;
+                case "prefetchDepth":
+                    prefetchDepth = Math.max(0, Integer.parseInt(value));
+                    break;
+                case "loaderThreads":
+                    loaderThreads = Math.max(1, Integer.parseInt(value));
+                    break;
+                case "vacuumThreshold":
+                    vacuumThreshold = Math.min(100, Math.max(0, Integer.parseInt(value)));
+                    break;
+                case "joinMemory":
+                    joinMemory = Math.max(1, Integer.parseInt(value));
+                    break;
+                case "joinBlockSize":
+                    joinBlockSize = Math.max(0, Integer.parseInt(value));
+                    break;
+                case "joinThreads":
+                    joinThreads = Math.max(1, Integer.parseInt(value));
+                    break;
+                default:
+                    System.out.println("Parametre de configuration inconnu : " + key);
+                    break;
+            }
+        }catch(NumberFormatException nf)
+        {
+            System.out.println("Valeur incorrecte pour " + key + " : " + value);
+        }
+    }
 
     public static int getPageSize() {
         return pageSize;
@@ -16,7 +137,78 @@ public class Constants {
         return frameCount;
     }
 
+    public static int getMinFrameCount() {
+        return minFrameCount;
+    }
+
+    /**
+     * Set the number of frames of the buffer pool, never below the minimum
+     * @param frameCount number of frames
+     * @return true if the value has been accepted, else false
+     */
+    static boolean setFrameCount(int frameCount) {
+        if(frameCount < minFrameCount)
+        {
+            System.out.println("Le nombre de frames doit etre au moins " + minFrameCount);
+            return false;
+        }
+        Constants.frameCount = frameCount;
+        return true;
+    }
+
     public static int getIntSize() {
         return intSize;
     }
+
+    public static int getSegmentPageCount() {
+        return segmentPageCount;
+    }
+
+    public static boolean isMappedStorage() {
+        return mappedStorage;
+    }
+
+    static void setMappedStorage(boolean mappedStorage) {
+        Constants.mappedStorage = mappedStorage;
+    }
+
+    public static String getReplacementPolicy() {
+        return replacementPolicy;
+    }
+
+    public static int getScanRingSize() {
+        return scanRingSize;
+    }
+
+    public static int getWriterInterval() {
+        return writerInterval;
+    }
+
+    public static int getWriterBatchSize() {
+        return writerBatchSize;
+    }
+
+    public static int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+
+    public static int getLoaderThreads() {
+        return loaderThreads;
+    }
+
+    public static int getVacuumThreshold() {
+        return vacuumThreshold;
+    }
+
+    public static int getJoinMemory() {
+        return joinMemory;
+    }
+
+    public static int getJoinBlockSize() {
+        return joinBlockSize;
+    }
+
+    public static int getJoinThreads() {
+        return joinThreads;
+    }
 }
@@ -0,0 +1,316 @@
+package source;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load a CSV file into a relation : the file is split on line boundaries into chunks parsed by a fork-join pool,
+ * each worker encoding the values straight into its own data page. Full pages are appended to the relation file by
+ * the calling thread alone, which gives them their page ids.
+ */
+class CsvLoader {
+    //size of the chunks of the file parsed by a single task
+    private static final int chunkSize = 4 << 20;
+    private HeapFile heapFile;
+    private RowLayout layout;
+    private FileChannel channel;
+    private BlockingQueue<ByteBuffer> fullPages = new LinkedBlockingQueue<>();
+    private BlockingQueue<ByteBuffer> emptyPages;
+    //data page of each worker thread
+    private ThreadLocal<BulkLoader> workerLoader;
+    private ConcurrentLinkedQueue<BulkLoader> loaders = new ConcurrentLinkedQueue<>();
+
+    CsvLoader(HeapFile heapFile)
+    {
+        this.heapFile = heapFile;
+        this.layout = heapFile.getReldef().getLayout();
+        workerLoader = ThreadLocal.withInitial(() -> {
+            BulkLoader loader = new BulkLoader(heapFile, fullPages, emptyPages);
+            loaders.add(loader);
+            return loader;
+        });
+    }
+
+    /**
+     * Load every line of the file into the relation then display the number of loaded and rejected lines
+     * @param pathName  path of the CSV file
+     * @throws IOException if the file can't be read
+     */
+    void load(String pathName) throws IOException
+    {
+        long start = System.nanoTime();
+        int threadCount = Constants.getLoaderThreads();
+        //each worker fills a page while others wait to be appended, the number of pages in memory is bounded
+        emptyPages = new ArrayBlockingQueue<>(threadCount * 4);
+        for(int i = 0; i < threadCount * 4; i++)
+            emptyPages.add(ByteBuffer.allocate(Constants.getPageSize()));
+        ForkJoinPool pool = new ForkJoinPool(threadCount);
+        try(RandomAccessFile file = new RandomAccessFile(pathName, "r"))
+        {
+            channel = file.getChannel();
+            long[] boundaries = splitOnLines();
+            ForkJoinTask<?> parsing = pool.submit(new ChunkParser(boundaries, 0, boundaries.length - 1));
+            //the pages are appended as soon as they're full, while the next ones are being parsed
+            while(!parsing.isDone())
+            {
+                ByteBuffer page = fullPages.poll(10, TimeUnit.MILLISECONDS);
+                if(page != null)
+                    append(page);
+            }
+            parsing.join();
+            //the last pages of the workers, partially filled
+            for(BulkLoader loader : loaders)
+                loader.finish();
+            while(!fullPages.isEmpty())
+                append(fullPages.take());
+        }catch(InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+        }finally
+        {
+            pool.shutdownNow();
+        }
+        long loadedCount = 0, rejectedCount = 0;
+        for(BulkLoader loader : loaders)
+        {
+            loadedCount += loader.getLoadedCount();
+            rejectedCount += loader.getRejectedCount();
+        }
+        double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+        System.out.println(loadedCount + " lignes chargees en " + String.format("%.2f", seconds) + " s ("
+                + (long) (loadedCount / seconds) + " lignes/s), " + rejectedCount + " lignes rejetees");
+    }
+
+    /**
+     * Append a full page to the relation file and give it back, emptied, to the workers
+     * @param page  data page
+     */
+    private void append(ByteBuffer page)
+    {
+        heapFile.appendDataPage(page);
+        //the strings shorter than their column don't overwrite every byte, the page is set back to 0
+        page.clear();
+        page.put(new byte[Constants.getPageSize()]);
+        page.rewind();
+        emptyPages.add(page);
+    }
+
+    /**
+     * Cut the file into chunks of about chunkSize bytes, each one starting at the beginning of a line
+     * @return offsets of the chunks, the last one being the size of the file
+     * @throws IOException if the file can't be read
+     */
+    private long[] splitOnLines() throws IOException
+    {
+        long fileSize = channel.size();
+        ArrayList<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+        ByteBuffer buffer = ByteBuffer.allocate(Constants.getPageSize());
+        long position = chunkSize;
+        while(position < fileSize)
+        {
+            //look for the end of the line the chunk would cut
+            long lineEnd = -1;
+            while(lineEnd < 0 && position < fileSize)
+            {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                for(int i = 0; i < read && lineEnd < 0; i++)
+                {
+                    if(buffer.get(i) == '\n')
+                        lineEnd = position + i;
+                }
+                position += Math.max(read, 0);
+            }
+            if(lineEnd < 0 || lineEnd + 1 >= fileSize)
+                break;
+            boundaries.add(lineEnd + 1);
+            position = lineEnd + 1 + chunkSize;
+        }
+        boundaries.add(fileSize);
+        long[] offsets = new long[boundaries.size()];
+        for(int i = 0; i < offsets.length; i++)
+            offsets[i] = boundaries.get(i);
+        return offsets;
+    }
+
+    /**
+     * Task parsing a range of chunks, split in two until a single chunk is left
+     */
+    private class ChunkParser extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private long[] boundaries;
+        private int firstChunk;
+        private int lastChunk;
+
+        ChunkParser(long[] boundaries, int firstChunk, int lastChunk)
+        {
+            this.boundaries = boundaries;
+            this.firstChunk = firstChunk;
+            this.lastChunk = lastChunk;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if(lastChunk - firstChunk > 1)
+            {
+                int middle = (firstChunk + lastChunk) / 2;
+                invokeAll(new ChunkParser(boundaries, firstChunk, middle), new ChunkParser(boundaries, middle, lastChunk));
+                return;
+            }
+            try
+            {
+                long start = boundaries[firstChunk];
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, boundaries[lastChunk] - start);
+                BulkLoader loader = workerLoader.get();
+                int lineStart = 0;
+                for(int i = 0; i <= chunk.limit(); i++)
+                {
+                    if(i == chunk.limit() || chunk.get(i) == '\n')
+                    {
+                        parseLine(chunk, lineStart, i, loader);
+                        lineStart = i + 1;
+                    }
+                }
+            }catch(IOException io)
+            {
+                throw new IllegalStateException("Erreur de lecture du fichier : " + io.getMessage());
+            }catch(InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Encode a line into the next slot of the worker's data page, the line being rejected if a value doesn't match
+     * its column. Empty values are ignored, like consecutive commas.
+     * @param chunk     bytes of the chunk
+     * @param from      position of the first byte of the line
+     * @param to        position after the last byte of the line
+     * @param loader    data page of the worker
+     * @throws InterruptedException if interrupted while handing a full page
+     */
+    private void parseLine(ByteBuffer chunk, int from, int to, BulkLoader loader) throws InterruptedException
+    {
+        if(to > from && chunk.get(to - 1) == '\r')
+            to--;
+        if(to == from)
+            return;
+        ByteBuffer page = loader.getBuffer();
+        int recordPosition = loader.getNextRecordPosition();
+        int fieldStart = from;
+        boolean valid = true;
+        for(int col = 0; col < layout.getColumnCount() && valid; col++)
+        {
+            int position = recordPosition + layout.getOffset(col);
+            while(fieldStart < to && chunk.get(fieldStart) == ',')
+                fieldStart++;
+            int fieldEnd = fieldStart;
+            while(fieldEnd < to && chunk.get(fieldEnd) != ',')
+                fieldEnd++;
+            if(fieldEnd == fieldStart)
+                valid = false;
+            else if(layout.getKind(col) == RowLayout.intColumn)
+                valid = writeInt(chunk, fieldStart, fieldEnd, page, position);
+            else if(layout.getKind(col) == RowLayout.floatColumn)
+                valid = writeFloat(chunk, fieldStart, fieldEnd, page, position);
+            else
+                valid = writeString(chunk, fieldStart, fieldEnd, layout.getLength(col), page, position);
+            fieldStart = fieldEnd;
+        }
+        //more values than columns
+        while(valid && fieldStart < to)
+            valid = chunk.get(fieldStart++) == ',';
+        if(valid)
+            loader.recordWritten();
+        else
+            loader.recordRejected();
+    }
+
+    /**
+     * Parse a decimal int without creating a string
+     * @return false if the value isn't an int
+     */
+    private boolean writeInt(ByteBuffer chunk, int from, int to, ByteBuffer page, int position)
+    {
+        boolean negative = chunk.get(from) == '-';
+        if(negative || chunk.get(from) == '+')
+            from++;
+        if(from == to)
+            return false;
+        long value = 0;
+        for(int i = from; i < to; i++)
+        {
+            int digit = chunk.get(i) - '0';
+            if(digit < 0 || digit > 9)
+                return false;
+            value = value * 10 + digit;
+            if(value > (long) Integer.MAX_VALUE + 1)
+                return false;
+        }
+        value = negative ? -value : value;
+        if(value > Integer.MAX_VALUE)
+            return false;
+        page.putInt(position, (int) value);
+        return true;
+    }
+
+    /**
+     * @return false if the value isn't a float
+     */
+    private boolean writeFloat(ByteBuffer chunk, int from, int to, ByteBuffer page, int position)
+    {
+        byte[] bytes = new byte[to - from];
+        chunk.get(from, bytes);
+        try
+        {
+            page.putFloat(position, Float.parseFloat(new String(bytes, StandardCharsets.US_ASCII)));
+            return true;
+        }catch(NumberFormatException nf)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Write the characters of a value, ASCII bytes being copied without decoding
+     * @return false if the value is longer than its column
+     */
+    private boolean writeString(ByteBuffer chunk, int from, int to, int length, ByteBuffer page, int position)
+    {
+        boolean ascii = true;
+        for(int i = from; i < to && ascii; i++)
+            ascii = chunk.get(i) >= 0;
+        if(ascii)
+        {
+            if(to - from > length)
+                return false;
+            for(int i = from; i < to; i++)
+                page.putChar(position + (i - from) * 2, (char) chunk.get(i));
+            return true;
+        }
+        byte[] bytes = new byte[to - from];
+        chunk.get(from, bytes);
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        if(value.length() > length)
+            return false;
+        for(int i = 0; i < value.length(); i++)
+            page.putChar(position + i * 2, value.charAt(i));
+        return true;
+    }
+}
@@ -139,6 +139,8 @@ class DBDef{
       {
         System.out.print(chaine + " ");
       }
+      if(r.isSlottedPages())
+        System.out.print("slotted");
       System.out.println();
     }
     System.out.println("Nombre de relations = " + relCount + "\n");
@@ -27,6 +27,9 @@ class DBManager{
     void init() {
         DBDef.getInstance().init();
         FileManager.getInstance().init();
+        //the buffer manager is created before the background writer thread starts using it
+        BufferManager.getInstance();
+        BackgroundWriter.getInstance().start();
     }
 
     /**
@@ -34,7 +37,9 @@ class DBManager{
      */
     private void finish() {
         DBDef.getInstance().finish();
+        BackgroundWriter.getInstance().stop();
         BufferManager.getInstance().flushAll();
+        DiskManager.getInstance().closeAll();
     }
 
     /**
@@ -68,83 +73,120 @@ class DBManager{
             }
         }
         //Choice here depends on the command first argument :"action"
-        switch (action.toString()) {
-            case "exit": finish();
-                break;
-            case "display": DBDef.getInstance().display();
-                break;
-            case "create":
-                //arguments count without the action, the relation name and the number of columns
-                int incompleteArgumentsCount = argumentsCount - 3;
-                columnsCount = Integer.parseInt(arguments.get(0));
-                arguments.remove(0);
-                //check if the relation name already exists
-                if (findMatchingReldef(relName.toString()) == null) {
-                    //check if the right number of arguments has been given
-                    if (incompleteArgumentsCount == columnsCount)
-                        createRelation(relName.toString(), columnsCount, arguments);
-                    else {
-                        System.out.println("Le nombre de colonnes donne en 3eme argument ne correspond pas au nombre de colonnes indique par la suite");
+        try
+        {
+            switch (action.toString()) {
+                case "exit": finish();
+                    break;
+                case "display": DBDef.getInstance().display();
+                    break;
+                case "create":
+                    //arguments count without the action, the relation name and the number of columns
+                    int incompleteArgumentsCount = argumentsCount - 3;
+                    columnsCount = Integer.parseInt(arguments.get(0));
+                    arguments.remove(0);
+                    //the "slotted" option after the column types stores the strings with their own length
+                    boolean slotted = incompleteArgumentsCount == columnsCount + 1
+                            && arguments.get(arguments.size() - 1).equals("slotted");
+                    if (slotted) {
+                        arguments.remove(arguments.size() - 1);
+                        incompleteArgumentsCount--;
+                    }
+                    //check if the relation name already exists
+                    if (findMatchingReldef(relName.toString()) == null) {
+                        //check if the right number of arguments has been given
+                        if (incompleteArgumentsCount == columnsCount)
+                            executed = createRelation(relName.toString(), columnsCount, arguments, slotted);
+                        else {
+                            System.out.println("Le nombre de colonnes donne en 3eme argument ne correspond pas au nombre de colonnes indique par la suite");
+                            executed = false;
+                        }
+                    } else {
+                        System.out.println("Une relation avec ce nom existe deja");
                         executed = false;
                     }
-                } else {
-                    System.out.println("Une relation avec ce nom existe deja");
-                    executed = false;
+                    break;
+                case "clean":
+                        clean();
+                    break;
+                case "insert":
+                    insertRelation(relName.toString(), arguments);
+                    break;
+                case "insertall":
+                    fileName = "\\" + arguments.get(0);
+                    insertAll(fileName, relName.toString());
+                    break;
+                case "selectall":
+                    selectAll(relName.toString());
+                    break;
+                case "select": {
+                    //column 1 equals column index 0 in an array
+                    int colIdx = Integer.parseInt(arguments.get(0)) - 1;
+                    String value = arguments.get(1);
+                    select(relName.toString(), colIdx, value);
+                    break;
                 }
-                break;
-            case "clean":
-                    clean();
-                break;
-            case "insert":
-                insertRelation(relName.toString(), arguments);
-                break;
-            case "insertall":
-                fileName = "\\" + arguments.get(0);
-                insertAll(fileName, relName.toString());
-                break;
-            case "selectall":
-                selectAll(relName.toString());
-                break;
-            case "select": {
-                //column 1 equals column index 0 in an array
-                int colIdx = Integer.parseInt(arguments.get(0)) - 1;
-                String value = arguments.get(1);
-                select(relName.toString(), colIdx, value);
-                break;
-            }
-            case "delete": {
-                //column 1 equals column index 0 in an array
-                int colIdx = Integer.parseInt(arguments.get(0)) - 1;
-                String value = arguments.get(1);
-                delete(relName.toString(), colIdx, value);
-                break;
-            }
-            case "createindex": {
-                //column 1 equals column index 0 in an array
-                int colIdx = Integer.parseInt(arguments.get(0)) - 1;
-                int order = Integer.parseInt(arguments.get(1));
-                createIndex(relName.toString(), colIdx, order);
-                break;
-            }
-            case "selectindex": {
-                //column 1 equals column index 0 in an array
-                int colIdx = Integer.parseInt(arguments.get(0)) - 1;
-                int key = Integer.parseInt(arguments.get(1));
-                selectIndex(relName.toString(), colIdx, key);
-                break;
-            }
-            case "join": {
-                //column 1 equals column index 0 in an array
-                String relName2 = arguments.get(0);
-                int colIdx = Integer.parseInt(arguments.get(1)) - 1;
-                int colIdx2 = Integer.parseInt(arguments.get(2)) - 1;
-                join(relName.toString(), relName2, colIdx, colIdx2);
-                break;
+                case "delete": {
+                    //column 1 equals column index 0 in an array
+                    int colIdx = Integer.parseInt(arguments.get(0)) - 1;
+                    String value = arguments.get(1);
+                    delete(relName.toString(), colIdx, value);
+                    break;
+                }
+                case "createindex": {
+                    //column 1 equals column index 0 in an array
+                    int colIdx = Integer.parseInt(arguments.get(0)) - 1;
+                    int order = Integer.parseInt(arguments.get(1));
+                    createIndex(relName.toString(), colIdx, order);
+                    break;
+                }
+                case "selectindex": {
+                    //column 1 equals column index 0 in an array
+                    int colIdx = Integer.parseInt(arguments.get(0)) - 1;
+                    int key = Integer.parseInt(arguments.get(1));
+                    selectIndex(relName.toString(), colIdx, key);
+                    break;
+                }
+                case "join": {
+                    //column 1 equals column index 0 in an array
+                    String relName2 = arguments.get(0);
+                    int colIdx = Integer.parseInt(arguments.get(1)) - 1;
+                    int colIdx2 = Integer.parseInt(arguments.get(2)) - 1;
+                    //the join algorithm can be chosen after the columns, else it's chosen from the indexes and sizes
+                    String method = arguments.size() > 3 ? arguments.get(3) : null;
+                    //followed by the block size of a block nested loops join
+                    int blockSize = arguments.size() > 4 ? Integer.parseInt(arguments.get(4)) : 0;
+                    executed = join(relName.toString(), relName2, colIdx, colIdx2, method, blockSize);
+                    break;
+                }
+                case "stats":
+                    //"stats reset" sets every counter back to 0
+                    if(relName.toString().equals("reset"))
+                        Statistics.getInstance().reset();
+                    else
+                        Statistics.getInstance().display();
+                    break;
+                case "vacuum":
+                    executed = vacuum(relName.toString());
+                    break;
+                case "resizepool":
+                    //the new number of frames is the first argument
+                    if(BufferManager.getInstance().resize(Integer.parseInt(relName.toString())))
+                        System.out.println("Taille du buffer : " + Constants.getFrameCount() + " frames\n");
+                    else
+                        executed = false;
+                    break;
+                default:
+                    System.out.println("Operation non reconnue :" + action.toString());
+                    executed = false;
+                    break;
             }
-            default:
-                System.out.println("Operation non reconnue :" + action.toString());
-                executed = false;
-                break;
+        }catch(IllegalStateException is)
+        {
+            //the command has been interrupted, the pages it was using are released
+            System.out.println(is.getMessage());
+            BufferManager.getInstance().unpinAll();
+            executed = false;
         }
         if(!executed)
             System.out.println("Opération non effectuee\n");
@@ -155,22 +197,25 @@ class DBManager{
      * @param relName       relation name
      * @param columnsCount  number of columns
      * @param columnsType   list of the type of each column
+     * @param slotted       true to write the records in slotted pages, their strings taking only their length
+     * @return false if a record of the relation can't fit in a data page
      */
-    private void createRelation(String relName, int columnsCount, ArrayList<String> columnsType)
+    private boolean createRelation(String relName, int columnsCount, ArrayList<String> columnsType, boolean slotted)
         {
             //Calculate the size of a record in this relation along with its slotCount
-            int recordSize = 0;
-            for(String col : columnsType)
+            RowLayout layout = new RowLayout(columnsType);
+            int recordSize = layout.getRecordSize();
+            //a slotted page counts its available bytes instead of its free slots
+            int slotCount = slotted ? SlottedPage.getCapacity() : RelDef.computeSlotCount(recordSize);
+            if(slotted && new SlottedPage(layout).getMaxRecordSize() + SlottedPage.slotSize > slotCount)
             {
-                if(col.equals("int") || col.equals("float"))
-                    recordSize += 4;
-                else if(col.startsWith("string"))
-                    recordSize += Integer.parseInt(col.substring(6))*2;
+                System.out.println("Un tuple de cette relation ne tiendrait pas dans une page");
+                return false;
             }
-            int slotCount = Constants.getPageSize()/(recordSize+1);
-            RelDef reldef = new RelDef(relName, columnsCount, columnsType, DBDef.getRelCount(), recordSize, slotCount);
+            RelDef reldef = new RelDef(relName, columnsCount, columnsType, DBDef.getRelCount(), recordSize, slotCount, slotted);
             DBDef.getInstance().addRelation(reldef);
             FileManager.getInstance().createRelationFile(reldef);
+            return true;
         }
 
     /**
@@ -182,6 +227,9 @@ class DBManager{
         BufferManager.getInstance().reset();
         DBDef.getInstance().reset();
         FileManager.getInstance().reset();
+        //Close the open files before deleting them
+        DiskManager.getInstance().closeAll();
+        Statistics.getInstance().clear();
         //Delete files in DB directory
         DiskManager.getInstance().cleanDatabase();
     }
@@ -201,6 +249,7 @@ class DBManager{
                 record.setRid(FileManager.getInstance().insertRecordInRelation(record,relName));
             }
         }
+        setIndexesOutdated(relName);
     }
 
     /**
@@ -210,34 +259,17 @@ class DBManager{
      */
     private void insertAll(String fileName, String relName)
     {
-        //find a existing match for the relation name among reldefs in the dbdef and retrieve the matching reldef
-        RelDef reldef = findMatchingReldef(relName);
-        //Read the file and insert the records line by line
+        //Read the file and insert the records, the lines being parsed by several threads
         try
         {
-            //create a reading stream in the file
             File tempFile = new File("");
             //look for the csv file at our project root
             String pathName = tempFile.getAbsoluteFile().getParentFile().getAbsolutePath() + fileName;
-            FileReader fileReader = new FileReader(pathName);
-            BufferedReader bufferedReader = new BufferedReader(fileReader);
-            String line;
-            StringTokenizer sortLine;
-            ArrayList<String> values = new ArrayList<>();
-            //Read the file line by line
-            while((line = bufferedReader.readLine()) != null)
+            CsvLoader csvLoader = FileManager.getInstance().openCsvLoader(relName);
+            if(csvLoader != null)
             {
-                sortLine = new StringTokenizer(line);
-                //split the line by comma and create a list of values of a single record
-                while(sortLine.hasMoreTokens())
-                {
-                    values.add(sortLine.nextToken(","));
-                }
-                //create a record with the selected reldef (earlier,see beginning of the method and the list of values
-                Record record = new Record(reldef,values);
-                //insert the record at the right place and assign to it its rid
-                record.setRid(FileManager.getInstance().insertRecordInRelation(record,relName));
-                values.clear();
+                setIndexesOutdated(relName);
+                csvLoader.load(pathName);
             }
         }catch(FileNotFoundException fn)
         {
@@ -255,7 +287,7 @@ class DBManager{
      */
     private void selectAll(String relName)
     {
-        ArrayList<Record> records = FileManager.getInstance().selectAllFromRelation(relName);
+        RecordCursor records = FileManager.getInstance().selectAllFromRelation(relName);
         displayRecords(records,false);
     }
 
@@ -267,7 +299,7 @@ class DBManager{
      */
     private void select(String relName, int colIdx, String value)
     {
-        ArrayList<Record> records = FileManager.getInstance().selectFromRelation(relName,colIdx,value);
+        RecordCursor records = FileManager.getInstance().selectFromRelation(relName,colIdx,value);
         displayRecords(records,false);
     }
 
@@ -280,13 +312,72 @@ class DBManager{
     private void delete(String relName,  int colIdx, String value)
     {
         //select the eligible records
-        ArrayList<Record> records = FileManager.getInstance().selectFromRelation(relName,colIdx,value);
-        //delete records one by one
-        for(Record record : records)
+        RecordCursor records = FileManager.getInstance().selectFromRelation(relName,colIdx,value);
+        //delete records one by one, as soon as they're found
+        displayRecords(() -> {
+            Record record = records.next();
+            if(record != null)
+            {
+                //the slot of the record can be given to another one, by an insert or a vacuum
+                removeFromIndexes(record, relName);
+                FileManager.getInstance().deleteRecordFromRelation(record,relName);
+            }
+            return record;
+        },true);
+        //the relation is vacuumed once too much of its space is left empty by the deletes
+        if(FileManager.getInstance().getRelationOccupancy(relName) < Constants.getVacuumThreshold())
+            vacuum(relName);
+    }
+
+    /**
+     * Move the records of a relation into the first pages of its file and remove the pages left empty, the indexes
+     * of the relation being updated with the new rids
+     * @param relName       relation name
+     * @return false if the relation doesn't exist
+     */
+    private boolean vacuum(String relName)
+    {
+        HashMap<Rid, Rid> movedRids = new HashMap<>();
+        int pageCount = FileManager.getInstance().vacuumRelation(relName, movedRids);
+        if(pageCount < 0)
+        {
+            System.out.println("La relation " + relName + " n'existe pas");
+            return false;
+        }
+        for(Index index : DBDef.getInstance().getIndexes())
         {
-            FileManager.getInstance().deleteRecordFromRelation(record,relName);
+            if(index.getRelName().equals(relName))
+                index.getTree().moveRids(movedRids, pageCount);
+        }
+        System.out.println("Vacuum de " + relName + " : " + movedRids.size() + " tuples deplaces, " + pageCount + " pages dans le fichier\n");
+        return true;
+    }
+
+    /**
+     * Remove a deleted record from the indexes of its relation
+     * @param record        deleted record
+     * @param relName       relation name
+     */
+    private void removeFromIndexes(Record record, String relName)
+    {
+        for(Index index : DBDef.getInstance().getIndexes())
+        {
+            if(index.getRelName().equals(relName))
+                index.getTree().removeRid(record.getInt(index.getColIdx()), record.getRid());
+        }
+    }
+
+    /**
+     * Mark the indexes of a relation as outdated after an insertion, their trees missing the new records
+     * @param relName       relation name
+     */
+    private void setIndexesOutdated(String relName)
+    {
+        for(Index index : DBDef.getInstance().getIndexes())
+        {
+            if(index.getRelName().equals(relName))
+                index.setOutdated(true);
         }
-        displayRecords(records,true);
     }
 
     /**
@@ -340,11 +431,29 @@ class DBManager{
      * @param relName2      second relation name
      * @param colIdx        index of the selected column in the 1st relation
      * @param colIdx2       index of the selected column in the 2nd relation
+     * @param method        join algorithm, null to choose it
+     * @param blockSize     number of data pages by block of a block nested loops join, 0 to choose it
+     * @return false if the method is unknown
      */
-    private void join(String relName, String relName2, int colIdx, int colIdx2)
+    private boolean join(String relName, String relName2, int colIdx, int colIdx2, String method, int blockSize)
     {
-        ArrayList<Record> tuples = FileManager.getInstance().joinRelations(relName, relName2, colIdx, colIdx2);
-        displayRecords(tuples,false);
+        if("indexnestedloop".equals(method) && FileManager.getInstance().findJoinIndex(relName, relName2, colIdx, colIdx2) == null)
+            System.out.println("Aucun index a jour sur la colonne " + (colIdx2 + 1) + " de " + relName2 + ", jointure par hachage");
+        RecordCursor tuples = FileManager.getInstance().joinRelations(relName, relName2, colIdx, colIdx2, method, blockSize);
+        if(tuples == null)
+        {
+            System.out.println("Methode de jointure inconnue : " + method);
+            return false;
+        }
+        //an interrupted join still deletes its temporary files and stops its threads
+        try
+        {
+            displayRecords(tuples,false);
+        }finally
+        {
+            tuples.close();
+        }
+        return true;
     }
 
     /**
@@ -372,21 +481,56 @@ class DBManager{
     {
         System.out.println();
         for(Record record : records)
+            displayRecord(record);
+        displayTotal(records.size(), isDeleted);
+    }
+
+    /**
+     * display records, deleted or not, on the console as soon as the cursor returns them
+     * @param records   cursor over the records
+     * @param isDeleted true if the records are deleted, false if they aren't
+     */
+    private void displayRecords(RecordCursor records, boolean isDeleted)
+    {
+        System.out.println();
+        int count = 0;
+        Record record;
+        while((record = records.next()) != null)
         {
-            ArrayList<String> values = record.getValues();
-            for(int i = 0; i < values.size(); i++) {
-                if(i < values.size()-1)
-                    System.out.print(values.get(i) + " ; ");
-                else
-                    System.out.print(values.get(i));
-            }
-            System.out.println();
+            displayRecord(record);
+            count++;
+        }
+        displayTotal(count, isDeleted);
+    }
+
+    /**
+     * display the values of a record on a line
+     * @param record    record
+     */
+    private void displayRecord(Record record)
+    {
+        ArrayList<String> values = record.getValues();
+        for(int i = 0; i < values.size(); i++) {
+            if(i < values.size()-1)
+                System.out.print(values.get(i) + " ; ");
+            else
+                System.out.print(values.get(i));
         }
         System.out.println();
+    }
+
+    /**
+     * display the number of records displayed
+     * @param count     number of records
+     * @param isDeleted true if the records are deleted, false if they aren't
+     */
+    private void displayTotal(int count, boolean isDeleted)
+    {
+        System.out.println();
         if(isDeleted)
-            System.out.println("Total deleted records = " + records.size());
+            System.out.println("Total deleted records = " + count);
         else
-            System.out.println("Total records = " + records.size());
+            System.out.println("Total records = " + count);
         System.out.println();
     }
 }
@@ -1,6 +1,7 @@
 package source;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 
 /**
  * Data entry structure
@@ -20,6 +21,19 @@ public class DataEntry extends Entry {
         rids.add(rid);
     }
 
+    /**
+     * Point the rids at the new place of the records moved by a vacuum, the rids left on the removed pages being
+     * dropped
+     * @param movedRids     new rid of each moved record, by its former rid
+     * @param pageCount     number of pages of the file after the vacuum
+     */
+    void moveRids(HashMap<Rid, Rid> movedRids, int pageCount)
+    {
+        rids.replaceAll(rid -> movedRids.getOrDefault(rid, rid));
+        //the rids of the deleted records are removed by the delete, none should be left on a removed page
+        rids.removeIf(rid -> rid.getPageId().getPageIdx() >= pageCount);
+    }
+
     public ArrayList<Rid> getRids() {
         return rids;
     }
@@ -5,14 +5,31 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.TreeSet;
 
 /**
  * Class that manage every disk access operation
  */
 class DiskManager {
     private static DiskManager instance = null;
+    //open channels, one per relation file, kept open until exit or clean
+    private HashMap<Integer, FileChannel> channels;
+    //mapped segments of each relation file, only used in memory-mapped storage mode
+    private HashMap<Integer, ArrayList<MappedByteBuffer>> segments;
+    //file indexes from this one on are temporary files, used by the operators spilling their data on disk
+    static final int firstTemporaryFileIdx = 1 << 20;
+    //temporary files in use, their indexes being reused once they're deleted
+    private TreeSet<Integer> temporaryFiles = new TreeSet<>();
 
-    private DiskManager() { }
+    private DiskManager()
+    {
+        this.channels = new HashMap<>();
+        this.segments = new HashMap<>();
+    }
 
     static DiskManager getInstance()
     {
@@ -28,19 +45,55 @@ class DiskManager {
     void createFile(int fileIdx) {
         try
         {
-            String pathName = getAbsolutePathFromRelativePath(fileIdx);
-            RandomAccessFile file = new RandomAccessFile(pathName,"rw");
-            file.close();
+            getChannel(fileIdx);
         }catch(FileNotFoundException fn)
         {
             fn.printStackTrace();
             System.out.println("fichier non trouve/cree");
         }
-        catch (IOException io)
+
+    }
+
+    /**
+     * Create an empty temporary file, the lowest free index being reused
+     * @return file index of the temporary file
+     */
+    synchronized int createTemporaryFile()
+    {
+        int fileIdx = firstTemporaryFileIdx;
+        while(temporaryFiles.contains(fileIdx))
+            fileIdx++;
+        temporaryFiles.add(fileIdx);
+        try
+        {
+            getChannel(fileIdx).truncate(0);
+        }catch(IOException io)
         {
             io.printStackTrace();
+            System.out.println("Le fichier temporaire " + fileIdx + " n'a pas pu etre cree");
         }
+        return fileIdx;
+    }
 
+    /**
+     * Close and delete a temporary file
+     * @param fileIdx   file index of the temporary file
+     */
+    synchronized void deleteTemporaryFile(int fileIdx)
+    {
+        FileChannel channel = channels.remove(fileIdx);
+        segments.remove(fileIdx);
+        try
+        {
+            if(channel != null)
+                channel.close();
+        }catch(IOException io)
+        {
+            io.printStackTrace();
+        }
+        new File(getAbsolutePathFromRelativePath(fileIdx)).delete();
+        temporaryFiles.remove(fileIdx);
+        Statistics.getInstance().remove(fileIdx);
     }
 
     /**
@@ -49,19 +102,32 @@ class DiskManager {
      * @return  PageId  pageId of the page
      */
     PageId addPage(int fileIdx)
+    {
+        //add the page in the file by writing an empty page at its end
+        return addPage(fileIdx, ByteBuffer.allocate(Constants.getPageSize()));
+    }
+
+    /**
+     * add a new page into a file, already filled with its contents, so that it's written only once
+     * @param   fileIdx     file index
+     * @param   contents    Bytebuffer holding the page, rewound once written
+     * @return  PageId  pageId of the page
+     */
+    PageId addPage(int fileIdx, ByteBuffer contents)
     {
         PageId pageId;
         int pageNumber = 0;
         try
         {
-            String pathName = getAbsolutePathFromRelativePath(fileIdx);
-            RandomAccessFile file = new RandomAccessFile(pathName,"rw");
-            int fileSize = (int) file.length();
+            FileChannel channel = getChannel(fileIdx);
+            long fileSize = channel.size();
             //create pageNumber by dividing the filesize by the size of a page, starts at page 0
-            pageNumber = fileSize/Constants.getPageSize();
-            //add the page in the file by increasing the file size
-            file.setLength(fileSize + Constants.getPageSize());
-            file.close();
+            pageNumber = (int) (fileSize / Constants.getPageSize());
+            contents.rewind();
+            while(contents.hasRemaining())
+                channel.write(contents, fileSize + contents.position());
+            contents.rewind();
+            Statistics.getInstance().get(fileIdx).pageAdded();
         }catch(FileNotFoundException fn)
         {
             System.out.println("Erreur : ");
@@ -77,6 +143,30 @@ class DiskManager {
         return pageId;
     }
 
+    /**
+     * Remove the last pages of a file, none of them must be in the buffer pool anymore
+     * @param   fileIdx     file index
+     * @param   pageCount   number of pages kept
+     */
+    void truncate(int fileIdx, int pageCount)
+    {
+        try
+        {
+            getChannel(fileIdx).truncate((long) pageCount * Constants.getPageSize());
+            //the segments covering the removed pages are mapped again, with the new file size, when next used
+            ArrayList<MappedByteBuffer> fileSegments = segments.get(fileIdx);
+            if(fileSegments != null)
+            {
+                for(int i = pageCount / Constants.getSegmentPageCount(); i < fileSegments.size(); i++)
+                    fileSegments.set(i, null);
+            }
+        }catch(IOException io)
+        {
+            io.printStackTrace();
+            System.out.println("Le fichier " + fileIdx + " n'a pas pu etre reduit a " + pageCount + " pages");
+        }
+    }
+
     /**
      * Read the selected page and fill a buffer with its data
      * @param   pageId  PageID instance
@@ -85,19 +175,21 @@ class DiskManager {
      */
     ByteBuffer readPage(PageId pageId, ByteBuffer buffer)
     {
-        buffer.rewind();
-        int pageOffset;
+        buffer.clear();
+        long pageOffset;
+        if(Constants.isMappedStorage())
+        {
+            buffer.put(getMappedPage(pageId));
+            return buffer;
+        }
         try
         {
-            String pathName = getAbsolutePathFromRelativePath(pageId);
-            RandomAccessFile file = new RandomAccessFile(pathName,"r");
-            pageOffset =  pageId.getPageIdx() * Constants.getPageSize();
-            file.seek(pageOffset);
-            for(int i = 0; i < Constants.getPageSize() && buffer.hasRemaining(); i++)
-            {
-                buffer.put(file.readByte());
-            }
-            file.close();
+            FileChannel channel = getChannel(pageId.getFileIdx());
+            pageOffset = (long) pageId.getPageIdx() * Constants.getPageSize();
+            long start = System.nanoTime();
+            //a single positional read fills the whole page, loop only on a short read
+            while(buffer.hasRemaining() && channel.read(buffer, pageOffset + buffer.position()) > 0);
+            Statistics.getInstance().get(pageId.getFileIdx()).pageRead(System.nanoTime() - start);
         }catch(FileNotFoundException fn)
         {
             System.out.println("fichier non trouve");
@@ -115,19 +207,24 @@ class DiskManager {
      */
     void writePage(PageId pageId, ByteBuffer buffer)
     {
-        buffer.rewind();
-        int pageOffset;
+        buffer.clear();
+        long pageOffset;
+        if(Constants.isMappedStorage())
+        {
+            mapPage(pageId).put(buffer);
+            buffer.rewind();
+            return;
+        }
         try
         {
-            String pathName = getAbsolutePathFromRelativePath(pageId);
-            RandomAccessFile file = new RandomAccessFile(pathName,"rw");
-            pageOffset =  pageId.getPageIdx() * Constants.getPageSize();
-            file.seek(pageOffset);
-            for(int i = 0; i < Constants.getPageSize() && buffer.hasRemaining(); i++)
-            {
-                file.write(buffer.get());
-            }
-            file.close();
+            FileChannel channel = getChannel(pageId.getFileIdx());
+            pageOffset = (long) pageId.getPageIdx() * Constants.getPageSize();
+            long start = System.nanoTime();
+            //a single positional write saves the whole page, loop only on a short write
+            while(buffer.hasRemaining())
+                channel.write(buffer, pageOffset + buffer.position());
+            Statistics.getInstance().get(pageId.getFileIdx()).pageWritten(System.nanoTime() - start);
+            buffer.rewind();
         }catch(FileNotFoundException fn)
         {
             System.out.println("fichier non trouve");
@@ -138,6 +235,127 @@ class DiskManager {
         }
     }
 
+    /**
+     * Write consecutive pages of a file with a single vectored write
+     * @param   firstPageId PageID of the first page
+     * @param   buffers     buffers holding the pages
+     * @param   offset      index of the buffer of the first page
+     * @param   length      number of pages
+     */
+    void writePages(PageId firstPageId, ByteBuffer[] buffers, int offset, int length)
+    {
+        for(int i = offset; i < offset + length; i++)
+            buffers[i].clear();
+        try
+        {
+            FileChannel channel = getChannel(firstPageId.getFileIdx());
+            long start = System.nanoTime();
+            //the channel position is shared, positional accesses of other threads don't use it
+            synchronized(channel)
+            {
+                channel.position((long) firstPageId.getPageIdx() * Constants.getPageSize());
+                long remaining = (long) length * Constants.getPageSize();
+                while(remaining > 0)
+                    remaining -= channel.write(buffers, offset, length);
+            }
+            long nanosPerPage = (System.nanoTime() - start) / length;
+            RelationStats stats = Statistics.getInstance().get(firstPageId.getFileIdx());
+            for(int i = 0; i < length; i++)
+            {
+                stats.pageWritten(nanosPerPage);
+                stats.backgroundWrite();
+            }
+        }catch(IOException io)
+        {
+            io.printStackTrace();
+            System.out.println(length + " pages du fichier " + firstPageId.getFileIdx() + " n'ont pas pu etre ecrites");
+        }
+    }
+
+    /**
+     * Get a page directly from the mapped file to read it, without any copy (memory-mapped storage mode)
+     * @param   pageId  PageID instance
+     * @return  ByteBuffer slice of the mapped segment covering exactly the page
+     */
+    ByteBuffer getMappedPage(PageId pageId)
+    {
+        long start = System.nanoTime();
+        ByteBuffer page = mapPage(pageId);
+        Statistics.getInstance().get(pageId.getFileIdx()).pageRead(System.nanoTime() - start);
+        return page;
+    }
+
+    /**
+     * Get a page directly from the mapped file, without any copy (memory-mapped storage mode)
+     * The segment holding the page is mapped, or mapped again with a larger size, if the file has grown since
+     * @param   pageId  PageID instance
+     * @return  ByteBuffer slice of the mapped segment covering exactly the page
+     */
+    private ByteBuffer mapPage(PageId pageId)
+    {
+        int segmentSize = Constants.getSegmentPageCount() * Constants.getPageSize();
+        int segmentIdx = pageId.getPageIdx() / Constants.getSegmentPageCount();
+        int offsetInSegment = (pageId.getPageIdx() % Constants.getSegmentPageCount()) * Constants.getPageSize();
+        ArrayList<MappedByteBuffer> fileSegments = segments.computeIfAbsent(pageId.getFileIdx(), k -> new ArrayList<>());
+        while(fileSegments.size() <= segmentIdx)
+            fileSegments.add(null);
+        MappedByteBuffer segment = fileSegments.get(segmentIdx);
+        if(segment == null || segment.capacity() < offsetInSegment + Constants.getPageSize())
+        {
+            try
+            {
+                FileChannel channel = getChannel(pageId.getFileIdx());
+                long segmentOffset = (long) segmentIdx * segmentSize;
+                //only map what the file really contains so the file size keeps matching its page count,
+                //frames still pointing at the former mapping see the same data since both share the file
+                long mappedSize = Math.min(segmentSize, channel.size() - segmentOffset);
+                segment = channel.map(FileChannel.MapMode.READ_WRITE, segmentOffset, mappedSize);
+                fileSegments.set(segmentIdx, segment);
+            }catch(IOException io)
+            {
+                io.printStackTrace();
+                System.out.println("La page " + pageId.getPageIdx() + " du fichier " + pageId.getFileIdx() + " n'a pas pu etre projetee en memoire");
+                return ByteBuffer.allocate(Constants.getPageSize());
+            }
+        }
+        return segment.slice(offsetInSegment, Constants.getPageSize());
+    }
+
+    /**
+     * Save on disk every modification made on the mapped segments (memory-mapped storage mode)
+     */
+    void forceAll()
+    {
+        for(ArrayList<MappedByteBuffer> fileSegments : segments.values())
+        {
+            for(MappedByteBuffer segment : fileSegments)
+            {
+                if(segment != null)
+                    segment.force();
+            }
+        }
+    }
+
+    /**
+     * Close every open channel, must be called before leaving the application or deleting the files
+     */
+    synchronized void closeAll()
+    {
+        forceAll();
+        segments.clear();
+        for(FileChannel channel : channels.values())
+        {
+            try
+            {
+                channel.close();
+            }catch(IOException io)
+            {
+                io.printStackTrace();
+            }
+        }
+        channels.clear();
+    }
+
     /**
      * Delete every file of the database in the DB directory
      */
@@ -167,16 +385,30 @@ class DiskManager {
         }
     }
 
-    private String getAbsolutePathFromRelativePath(int fileIdx)
+    /**
+     * Get the open channel of a relation file, open it first if it isn't in the pool yet
+     * @param fileIdx file index
+     * @return FileChannel of the file
+     * @throws FileNotFoundException if the file can't be opened or created
+     */
+    private synchronized FileChannel getChannel(int fileIdx) throws FileNotFoundException
     {
-        File tempFile = new File("");
-        return tempFile.getAbsoluteFile().getParentFile().getAbsolutePath() + "/DB/Data_" + fileIdx + ".rf";
+        FileChannel channel = channels.get(fileIdx);
+        if(channel == null || !channel.isOpen())
+        {
+            RandomAccessFile file = new RandomAccessFile(getAbsolutePathFromRelativePath(fileIdx),"rw");
+            channel = file.getChannel();
+            channels.put(fileIdx, channel);
+        }
+        return channel;
     }
 
-    private String getAbsolutePathFromRelativePath(PageId pageId)
+    private String getAbsolutePathFromRelativePath(int fileIdx)
     {
         File tempFile = new File("");
-        return tempFile.getAbsoluteFile().getParentFile().getAbsolutePath() + "/DB/Data_" + pageId.getFileIdx() + ".rf";
+        if(fileIdx >= firstTemporaryFileIdx)
+            return tempFile.getAbsoluteFile().getParentFile().getAbsolutePath() + "/DB/Temp_" + (fileIdx - firstTemporaryFileIdx) + ".rf";
+        return tempFile.getAbsoluteFile().getParentFile().getAbsolutePath() + "/DB/Data_" + fileIdx + ".rf";
     }
 
     private String getAbsolutePathFromRelativePath()
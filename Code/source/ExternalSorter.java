@@ -0,0 +1,143 @@
+package source;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * External merge sort of records on a column : the records are sorted by runs filling the join memory, each run being
+ * written in a temporary file, then the runs are merged. Records fitting in the join memory are sorted without any
+ * temporary file.
+ */
+class ExternalSorter {
+    private RowLayout layout;
+    private Comparator<Record> comparator;
+    //each run being merged keeps a page in memory and its file open
+    private static final int maxMergedRuns = 128;
+
+    /**
+     * @param layout    layout of the records
+     * @param colIdx    column the records are sorted on
+     * @param asText    true to sort the values as they're displayed, when they're compared to a column of another kind
+     */
+    ExternalSorter(RowLayout layout, int colIdx, boolean asText)
+    {
+        this.layout = layout;
+        this.comparator = (record, record2) -> record.compareValue(colIdx, record2, colIdx, asText);
+    }
+
+    /**
+     * Sort records
+     * @param records   cursor over the records to sort, read until its end
+     * @return cursor over the sorted records, their temporary files being deleted once every record has been returned
+     * or the cursor closed
+     */
+    RecordCursor sort(RecordCursor records)
+    {
+        long memory = (long) Constants.getJoinMemory() * Constants.getPageSize();
+        ArrayList<SpillFile> runs = new ArrayList<>();
+        ArrayList<Record> run = new ArrayList<>();
+        long runSize = 0;
+        Record record;
+        while((record = records.next()) != null)
+        {
+            run.add(record.copy());
+            runSize += layout.getRecordSize();
+            if(runSize >= memory)
+            {
+                runs.add(writeRun(run));
+                run.clear();
+                runSize = 0;
+            }
+        }
+        run.sort(comparator);
+        if(runs.isEmpty())
+        {
+            return new RecordCursor() {
+                private int position = 0;
+
+                @Override
+                public Record next()
+                {
+                    return position < run.size() ? run.get(position++) : null;
+                }
+            };
+        }
+        if(!run.isEmpty())
+            runs.add(writeRun(run));
+        //the first runs are merged into longer ones until they can all be merged at once
+        while(runs.size() > maxMergedRuns)
+        {
+            ArrayList<SpillFile> mergedRuns = new ArrayList<>(runs.subList(0, maxMergedRuns));
+            runs.subList(0, maxMergedRuns).clear();
+            SpillFile longerRun = new SpillFile(layout);
+            RecordCursor cursor = merge(mergedRuns);
+            while((record = cursor.next()) != null)
+                longerRun.write(record);
+            runs.add(longerRun);
+        }
+        return merge(runs);
+    }
+
+    /**
+     * Sort a run and write it in a temporary file
+     * @param run   records of the run
+     * @return temporary file of the run
+     */
+    private SpillFile writeRun(ArrayList<Record> run)
+    {
+        run.sort(comparator);
+        SpillFile file = new SpillFile(layout);
+        for(Record record : run)
+            file.write(record);
+        return file;
+    }
+
+    /**
+     * Merge sorted runs
+     * @param runs  temporary files of the runs
+     * @return cursor over the records of every run, the files being deleted once every record has been returned or
+     * the cursor closed
+     */
+    private RecordCursor merge(ArrayList<SpillFile> runs)
+    {
+        RecordCursor[] cursors = new RecordCursor[runs.size()];
+        //next record of each run, the runs being ordered by their next record
+        Record[] heads = new Record[runs.size()];
+        PriorityQueue<Integer> queue = new PriorityQueue<>((i, j) -> comparator.compare(heads[i], heads[j]));
+        for(int i = 0; i < runs.size(); i++)
+        {
+            cursors[i] = runs.get(i).openCursor();
+            if((heads[i] = cursors[i].next()) != null)
+                queue.add(i);
+        }
+        return new RecordCursor() {
+            //run of the record returned last, moved to its next record only at the next call
+            private int lastRun = -1;
+
+            @Override
+            public Record next()
+            {
+                if(lastRun >= 0 && (heads[lastRun] = cursors[lastRun].next()) != null)
+                    queue.add(lastRun);
+                if(queue.isEmpty())
+                {
+                    close();
+                    return null;
+                }
+                lastRun = queue.poll();
+                return heads[lastRun];
+            }
+
+            @Override
+            public void close()
+            {
+                for(SpillFile run : runs)
+                    run.delete();
+                runs.clear();
+                queue.clear();
+                lastRun = -1;
+            }
+        };
+    }
+}
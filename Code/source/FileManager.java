@@ -1,6 +1,6 @@
 package source;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.HashMap;
 
 /**
  * Class that manages the files, each associated to a relation in the database
@@ -68,21 +68,32 @@ class FileManager {
         return rid;
     }
 
+    /**
+     * Prepare the load of a CSV file in a relation
+     *
+     * @param relName       relation name
+     * @return loader of the relation, null if the relation doesn't exist
+     */
+    CsvLoader openCsvLoader(String relName)
+    {
+        HeapFile heapFile = findMatchingHeapFile(relName);
+        if(heapFile == null)
+            return null;
+        return new CsvLoader(heapFile);
+    }
+
     /**
      * Select every record from the selected relation
      *
      * @param relName       relation name
-     * @return records list
+     * @return cursor over the records, without any record if the relation doesn't exist
      */
-    ArrayList<Record> selectAllFromRelation(String relName)
+    RecordCursor selectAllFromRelation(String relName)
     {
-        ArrayList<Record> recordList = new ArrayList<>();
-        for (HeapFile heapFile : heapFiles) {
-            String relNameFromHeapFile = heapFile.getReldef().getRelName();
-            if (relNameFromHeapFile.equals(relName))
-                recordList = heapFile.getAllRecords();
-        }
-        return recordList;
+        HeapFile heapFile = findMatchingHeapFile(relName);
+        if(heapFile == null)
+            return () -> null;
+        return heapFile.openCursor();
     }
 
     /**
@@ -90,24 +101,15 @@ class FileManager {
      * @param relName       relation name
      * @param colIdx        column index
      * @param value         selected value
-     * @return records list
+     * @return cursor over the records
      */
-    ArrayList<Record> selectFromRelation(String relName, int colIdx, String value)
+    RecordCursor selectFromRelation(String relName, int colIdx, String value)
     {
-        //recordList : record list with the right relation name, will be sorted with the right conditions secondly
-        ArrayList<Record> recordList = new ArrayList<>();
-        for (HeapFile heapFile : heapFiles) {
-            RelDef relDef = heapFile.getReldef();
-            if (relDef.getRelName().equals(relName))
-                recordList = heapFile.getAllRecords();
-        }
-        Iterator iterator = recordList.iterator();
-        while (iterator.hasNext()) {
-            Record record = (Record) iterator.next();
-            if (!record.getValues().get(colIdx).equals(value))
-                iterator.remove();
-        }
-        return recordList;
+        HeapFile heapFile = findMatchingHeapFile(relName);
+        if(heapFile == null)
+            return () -> null;
+        //the value is compared to the bytes of each record, only the matching ones are decoded
+        return heapFile.openCursor(new ColumnPredicate(heapFile.getReldef(), colIdx, value));
     }
 
     /**
@@ -124,6 +126,32 @@ class FileManager {
         }
     }
 
+    /**
+     * Vacuum a relation : its records are moved into the first data pages and the empty pages left at the end of its
+     * file are removed
+     * @param relName       relation name
+     * @param movedRids     receives the new rid of each moved record, by its former rid
+     * @return number of pages of the file afterwards, -1 if the relation doesn't exist
+     */
+    int vacuumRelation(String relName, HashMap<Rid, Rid> movedRids)
+    {
+        HeapFile heapFile = findMatchingHeapFile(relName);
+        if(heapFile == null)
+            return -1;
+        heapFile.vacuum(movedRids);
+        return heapFile.getPageCount();
+    }
+
+    /**
+     * @param relName       relation name
+     * @return percentage of the space of the data pages of the relation used by records, 100 if it doesn't exist
+     */
+    int getRelationOccupancy(String relName)
+    {
+        HeapFile heapFile = findMatchingHeapFile(relName);
+        return heapFile == null ? 100 : heapFile.getOccupancy();
+    }
+
     /**
      * Create index from a relation
      * @param index         Index instance
@@ -146,8 +174,8 @@ class FileManager {
         do {
             keepOnGoing = false;
             for (int i = 0; i < recordList.size() - 1; i++) {
-                int value1 = Integer.parseInt(recordList.get(i).getValues().get(colIdx));
-                int value2 = Integer.parseInt(recordList.get(i + 1).getValues().get(colIdx));
+                int value1 = recordList.get(i).getInt(colIdx);
+                int value2 = recordList.get(i + 1).getInt(colIdx);
                 if (value1 > value2) {
                     Record record = recordList.get(i + 1);
                     recordList.set(i + 1, recordList.get(i));
@@ -159,14 +187,14 @@ class FileManager {
         while (keepOnGoing);
         //Assign records to keys to make DataEntries and order them by leaf
         ArrayList<Leaf> leaves = new ArrayList<>();
-        int lastKey = Integer.parseInt(recordList.get(0).getValues().get(colIdx));
+        int lastKey = recordList.get(0).getInt(colIdx);
         leaves.add(new Leaf(null));
         int leavesCount = 0;
         int dataEntriesCount = 0;
         DataEntry dataEntry;
         leaves.get(leavesCount).addEntry(new DataEntry(lastKey));
         for (Record record : recordList) {
-            int key = Integer.parseInt(record.getValues().get(colIdx));
+            int key = record.getInt(colIdx);
             //"key" of the current record different than the last one
             if (key != lastKey) {
                 //leaf is full, create a new one along with a new data entry
@@ -214,35 +242,83 @@ class FileManager {
      * @param relName2      second relation name
      * @param colIdx        index of the selected column in the 1st relation
      * @param colIdx2       index of the selected column in the 2nd relation
-     * @return list of the resulting tuples
+     * @param method        join algorithm : "hash", "nestedloop", "blocknestedloop", "indexnestedloop" or
+     *                      "sortmerge", null to choose between an index nested loops join and a hash join
+     * @param blockSize     number of data pages of the 1st relation by block of a block nested loops join, 0 to
+     *                      choose it from the frames available
+     * @return cursor over the resulting tuples, null if the method is unknown
      */
-    ArrayList<Record> joinRelations(String relName, String relName2, int colIdx, int colIdx2)
+    RecordCursor joinRelations(String relName, String relName2, int colIdx, int colIdx2, String method, int blockSize)
     {
-        ArrayList<Record> tuples = new ArrayList<>();
-        ArrayList<Record> recordsFromPageRel1;
-        int currentDataPageNumber = 1;
         //Look for the corresponding heapfile for each relation
         HeapFile heapFile1 = findMatchingHeapFile(relName);
         HeapFile heapFile2 = findMatchingHeapFile(relName2);
-        //Loop until there aren't any more data pages to explore in the first relation
-        while((recordsFromPageRel1 = heapFile1.getRecordsInDataPage(currentDataPageNumber)) != null)
+        Index index = findJoinIndex(relName, relName2, colIdx, colIdx2);
+        if(method == null)
+            method = index != null && IndexNestedLoopJoinCursor.isCheaper(heapFile1, heapFile2) ? "indexnestedloop" : "hash";
+        switch(method)
         {
-            currentDataPageNumber++;
-            //Get all tuples of the second relation, page by page
-            ArrayList<Record> recordsFromRel2 = heapFile2.getAllRecords();
-            //Compare the tuples from the 1st relation's one page
-            for(Record R1 : recordsFromPageRel1) {
-                for(Record R2 : recordsFromRel2) {
-                    if(R1.getValues().get(colIdx).equals(R2.getValues().get(colIdx2)))
-                    {
-                        ArrayList<String> values = new ArrayList<>(R1.getValues());
-                        values.addAll(R2.getValues());
-                        tuples.add(new Record(heapFile1.getReldef(),values));
-                    }
-                }
-            }
+            case "indexnestedloop":
+                //without an index on the join column of the 2nd relation, the records are joined by hashing
+                if(index != null)
+                    return new IndexNestedLoopJoinCursor(heapFile1, heapFile2, colIdx, colIdx2, index);
+                return new HashJoinCursor(heapFile1, heapFile2, colIdx, colIdx2);
+            case "hash":
+                return new HashJoinCursor(heapFile1, heapFile2, colIdx, colIdx2);
+            case "parallelhash":
+                //the partitions of a relation too large for the join memory are written by a single thread
+                if(ParallelHashJoinCursor.fitsInMemory(heapFile1, heapFile2))
+                    return new ParallelHashJoinCursor(heapFile1, heapFile2, colIdx, colIdx2);
+                return new HashJoinCursor(heapFile1, heapFile2, colIdx, colIdx2);
+            case "sortmerge":
+                //a relation already ordered by an index on its join column isn't sorted
+                return new SortMergeJoinCursor(heapFile1, heapFile2, colIdx, colIdx2,
+                        findJoinIndex(relName2, relName, colIdx2, colIdx), index);
+            case "nestedloop":
+                return new NestedLoopJoinCursor(heapFile1, heapFile2, colIdx, colIdx2, 1);
+            case "blocknestedloop":
+                if(blockSize == 0)
+                    blockSize = Constants.getJoinBlockSize();
+                return new NestedLoopJoinCursor(heapFile1, heapFile2, colIdx, colIdx2,
+                        NestedLoopJoinCursor.chooseBlockSize(heapFile2, blockSize));
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Look for an index an index nested loops join can use : an index up to date on the join column of the 2nd
+     * relation, both join columns holding ints
+     * @param relName       relation name
+     * @param relName2      second relation name
+     * @param colIdx        index of the selected column in the 1st relation
+     * @param colIdx2       index of the selected column in the 2nd relation
+     * @return index, null if there isn't any
+     */
+    Index findJoinIndex(String relName, String relName2, int colIdx, int colIdx2)
+    {
+        HeapFile heapFile1 = findMatchingHeapFile(relName);
+        HeapFile heapFile2 = findMatchingHeapFile(relName2);
+        if(heapFile1.getReldef().getLayout().getKind(colIdx) != RowLayout.intColumn
+                || heapFile2.getReldef().getLayout().getKind(colIdx2) != RowLayout.intColumn)
+            return null;
+        return findIndex(relName2, colIdx2);
+    }
+
+    /**
+     * Look for an index up to date on a column of a relation
+     * @param relName       relation name
+     * @param colIdx        index of the column
+     * @return index, null if there isn't any
+     */
+    private Index findIndex(String relName, int colIdx)
+    {
+        for(Index index : DBDef.getInstance().getIndexes())
+        {
+            if(index.getRelName().equals(relName) && index.getColIdx() == colIdx && !index.isOutdated())
+                return index;
         }
-        return tuples;
+        return null;
     }
 
     /**
@@ -7,19 +7,38 @@ import java.nio.ByteBuffer;
  */
 public class Frame {
 
+    //position of the frame in the buffer pool, its buffer is the matching slice of the arena
+    private final int slotIdx;
     private ByteBuffer buffer;
     private PageId pageId;
     private int  pinCount;
     private boolean valdirty;
     private int refbit;
+    //true while the prefetcher is reading the page into the buffer
+    private boolean loading;
 
-    Frame(PageId pageId)
+    Frame(int slotIdx, ByteBuffer buffer)
+    {
+        this.slotIdx = slotIdx;
+        this.buffer = buffer;
+        this.pageId = null;
+        this.pinCount = 0;
+        this.valdirty = false;
+        this.refbit = 0;
+        this.loading = false;
+    }
+
+    /**
+     * Reuse the frame for another page, only its metadata is reset, the buffer stays the same
+     * @param pageId    pageId of the page now held by the frame, null if the frame becomes empty
+     */
+    void assign(PageId pageId)
     {
-        this.buffer = ByteBuffer.allocateDirect(Constants.getPageSize());
         this.pageId = pageId;
         this.pinCount = 0;
         this.valdirty = false;
         this.refbit = 0;
+        this.loading = false;
     }
 
     void setPinCount(int pinCount) {
@@ -32,11 +51,19 @@ public class Frame {
 
     void setRefbit(int refbit) { this.refbit = refbit; }
 
+    void setLoading(boolean loading) {
+        this.loading = loading;
+    }
+
 
     void setBuffer(ByteBuffer buffer) {
         this.buffer = buffer;
     }
 
+    int getSlotIdx() {
+        return slotIdx;
+    }
+
     ByteBuffer getBuffer() {
         return buffer;
     }
@@ -57,4 +84,8 @@ public class Frame {
         return valdirty;
     }
 
+    boolean isLoading() {
+        return loading;
+    }
+
 }
@@ -0,0 +1,215 @@
+package source;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.TreeSet;
+
+/**
+ * Free space map of a heap file : number of available slots of each data page, kept in memory so that a data page
+ * with room is found in O(log n) without reading the directory.
+ * On disk, the available slots are stored in directory pages placed every pageSize/intSize pages of the file
+ * (pages 0, 1024, 2048... by default). The directory page at index k*1024 holds an int for each page k*1024 + i
+ * at offset i*intSize, the first int of the Header Page (page 0) being the data page count. Page 0 alone has the
+ * same layout as the former single Header Page, and the relation can keep growing by adding directory pages.
+ * The pages of a slotted relation count their available bytes instead of their available slots.
+ */
+class FreeSpaceMap {
+    private RelDef reldef;
+    //available slots of each data page, indexed by data page number (starting at 1)
+    private int[] availableSlots = null;
+    private int dataPageCount = 0;
+    //data page numbers of the pages with room for a record : one available slot, or enough bytes for the longest
+    //record in a slotted page
+    private TreeSet<Integer> pagesWithRoom = new TreeSet<>();
+
+    FreeSpaceMap(RelDef reldef)
+    {
+        this.reldef = reldef;
+    }
+
+    /**
+     * @return number of ints in a directory page, hence the interval between two directory pages
+     */
+    static int getEntriesPerDirectory()
+    {
+        return Constants.getPageSize() / Constants.getIntSize();
+    }
+
+    /**
+     * Convert a data page number (starting at 1) into the index of the page in the file, directory pages excluded
+     * @param dataPageNumber    data page number
+     * @return page index in the file
+     */
+    static int toPageIdx(int dataPageNumber)
+    {
+        return dataPageNumber + (dataPageNumber - 1) / (getEntriesPerDirectory() - 1);
+    }
+
+    /**
+     * Convert the index of a data page in the file into its data page number
+     * @param pageIdx   page index in the file
+     * @return data page number
+     */
+    static int toDataPageNumber(int pageIdx)
+    {
+        return pageIdx - pageIdx / getEntriesPerDirectory();
+    }
+
+    /**
+     * @param pageIdx   page index in the file
+     * @return true if the page is a directory page
+     */
+    static boolean isDirectoryPage(int pageIdx)
+    {
+        return pageIdx % getEntriesPerDirectory() == 0;
+    }
+
+    int getDataPageCount()
+    {
+        load();
+        return dataPageCount;
+    }
+
+    /**
+     * @param dataPageNumber    data page number
+     * @return number of available slots of the data page
+     */
+    int getAvailableSlots(int dataPageNumber)
+    {
+        load();
+        return availableSlots[dataPageNumber];
+    }
+
+    /**
+     * Look for a data page with at least one available slot, the first one in the file
+     * @return data page number, -1 if every data page is full
+     */
+    int findPageWithRoom()
+    {
+        load();
+        return pagesWithRoom.isEmpty() ? -1 : pagesWithRoom.first();
+    }
+
+    /**
+     * Register a new data page in the map and in the directory
+     * @param pageId            PageId of the new data page
+     * @param availableSlots    number of available slots of the page, slotCount if it's empty
+     */
+    void addDataPage(PageId pageId, int availableSlots)
+    {
+        load();
+        dataPageCount++;
+        PageId headerPageId = new PageId(reldef.getFileIdx(),0);
+        ByteBuffer bufferHeaderPage = BufferManager.getInstance().getPage(headerPageId);
+        //Update the number of data pages in the file registered by the Header Page
+        bufferHeaderPage.putInt(0, dataPageCount);
+        BufferManager.getInstance().freePage(headerPageId,true);
+        setAvailableSlots(toDataPageNumber(pageId.getPageIdx()), availableSlots);
+    }
+
+    /**
+     * Update the number of available slots of a data page, in the map and in the directory
+     * @param pageId    PageId of the data page
+     * @param delta     -1 when a record is written, +1 when a record is deleted (its size in bytes for a slotted page)
+     */
+    void updateAvailableSlots(PageId pageId, int delta)
+    {
+        load();
+        int dataPageNumber = toDataPageNumber(pageId.getPageIdx());
+        setAvailableSlots(dataPageNumber, availableSlots[dataPageNumber] + delta);
+    }
+
+    /**
+     * Forget the last data pages of the file, once they're empty, the header page keeping the new data page count
+     * @param newDataPageCount  number of data pages kept
+     */
+    void removeLastDataPages(int newDataPageCount)
+    {
+        load();
+        for(int i = newDataPageCount + 1; i <= dataPageCount; i++)
+        {
+            availableSlots[i] = 0;
+            pagesWithRoom.remove(i);
+        }
+        dataPageCount = newDataPageCount;
+        PageId headerPageId = new PageId(reldef.getFileIdx(),0);
+        ByteBuffer bufferHeaderPage = BufferManager.getInstance().getPage(headerPageId);
+        bufferHeaderPage.putInt(0, dataPageCount);
+        BufferManager.getInstance().freePage(headerPageId,true);
+    }
+
+    /**
+     * @return percentage of the slots (or bytes for a slotted page) of the data pages holding a record, 100 if there
+     * isn't any data page
+     */
+    int getOccupancy()
+    {
+        load();
+        if(dataPageCount == 0)
+            return 100;
+        return (int) (getUsedSlotCount() * 100 / ((long) dataPageCount * reldef.getSlotCount()));
+    }
+
+    /**
+     * @return number of slots (or bytes for a slotted page) of the data pages holding a record
+     */
+    long getUsedSlotCount()
+    {
+        load();
+        long used = 0;
+        for(int i = 1; i <= dataPageCount; i++)
+            used += reldef.getSlotCount() - availableSlots[i];
+        return used;
+    }
+
+    /**
+     * Set the number of available slots of a data page, in the map and in its directory page
+     * @param dataPageNumber    data page number
+     * @param slots             number of available slots
+     */
+    private void setAvailableSlots(int dataPageNumber, int slots)
+    {
+        if(dataPageNumber >= availableSlots.length)
+            availableSlots = Arrays.copyOf(availableSlots, Math.max(dataPageNumber + 1, availableSlots.length * 2));
+        availableSlots[dataPageNumber] = slots;
+        if(slots >= reldef.getMinimumRoom())
+            pagesWithRoom.add(dataPageNumber);
+        else
+            pagesWithRoom.remove(dataPageNumber);
+        int pageIdx = toPageIdx(dataPageNumber);
+        PageId directoryPageId = new PageId(reldef.getFileIdx(), pageIdx - pageIdx % getEntriesPerDirectory());
+        ByteBuffer bufferDirectoryPage = BufferManager.getInstance().getPage(directoryPageId);
+        bufferDirectoryPage.putInt((pageIdx % getEntriesPerDirectory()) * Constants.getIntSize(), slots);
+        BufferManager.getInstance().freePage(directoryPageId,true);
+    }
+
+    /**
+     * Read every directory page of the file the first time the map is used
+     */
+    private void load()
+    {
+        if(availableSlots != null)
+            return;
+        PageId headerPageId = new PageId(reldef.getFileIdx(),0);
+        ByteBuffer bufferHeaderPage = BufferManager.getInstance().getPage(headerPageId);
+        dataPageCount = bufferHeaderPage.getInt(0);
+        BufferManager.getInstance().freePage(headerPageId,false);
+        availableSlots = new int[Math.max(16, dataPageCount + 1)];
+        int dataPageNumber = 1;
+        //directory pages are read one after another, each one covering the data pages up to the next one
+        for(int directoryPageIdx = 0; dataPageNumber <= dataPageCount; directoryPageIdx += getEntriesPerDirectory())
+        {
+            PageId directoryPageId = new PageId(reldef.getFileIdx(), directoryPageIdx);
+            ByteBuffer bufferDirectoryPage = BufferManager.getInstance().getPage(directoryPageId);
+            for(int i = 1; i < getEntriesPerDirectory() && dataPageNumber <= dataPageCount; i++)
+            {
+                int slots = bufferDirectoryPage.getInt(i * Constants.getIntSize());
+                availableSlots[dataPageNumber] = slots;
+                if(slots >= reldef.getMinimumRoom())
+                    pagesWithRoom.add(dataPageNumber);
+                dataPageNumber++;
+            }
+            BufferManager.getInstance().freePage(directoryPageId,false);
+        }
+    }
+}
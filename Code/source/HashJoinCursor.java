@@ -0,0 +1,306 @@
+package source;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Hash equi-join : a hash table is built on the join column of the smaller relation, then probed by each record of
+ * the other one, read once. When the records of the smaller relation don't fit in the join memory, both relations
+ * are split into partitions on the hash of their join column, written in temporary files, and joined one partition
+ * at a time (grace hash join). A partition still too large is split again with another hash, and one that can't be
+ * split, its records sharing the same hash, is joined by blocks of records fitting in the join memory, its probe
+ * partition being read once per block.
+ */
+class HashJoinCursor implements RecordCursor {
+    private HeapFile buildHeapFile;
+    private HeapFile probeHeapFile;
+    private int buildColIdx;
+    private int probeColIdx;
+    //true if the hash table is built on the 1st relation, whose columns come first in the tuples
+    private boolean buildFirst;
+    //values of columns of different kinds are compared, and hashed, as they're displayed
+    private boolean textKeys;
+    private RowLayout joinLayout;
+    //records of the build relation (or partition) by hash of their join column
+    private HashMap<Integer, ArrayList<Record>> table = null;
+    private RecordCursor probeCursor = null;
+    private Record probeRecord = null;
+    //records of the table with the same hash as the current probe record
+    private ArrayList<Record> matches = null;
+    private int matchPosition = 0;
+    //partitions of both relations in grace mode still to be joined, empty while the build relation fits in memory
+    private ArrayDeque<Partition> partitions = new ArrayDeque<>();
+    //partition being joined, null before the first table and while the build relation fits in memory
+    private Partition partition = null;
+    //records of the build partition not in the table yet, null once they've all been read
+    private RecordCursor buildCursor = null;
+    private boolean started = false;
+    //each partition of both relations has its own temporary file
+    private static final int maxPartitionCount = 128;
+    //number of times a partition can be split again before being joined by blocks
+    private static final int maxSplitLevel = 3;
+
+    /**
+     * Partition of both relations, along with the number of times its records have been split
+     */
+    private static class Partition {
+        private SpillFile build;
+        private SpillFile probe;
+        private int level;
+
+        private Partition(SpillFile build, SpillFile probe, int level)
+        {
+            this.build = build;
+            this.probe = probe;
+            this.level = level;
+        }
+
+        private void delete()
+        {
+            build.delete();
+            probe.delete();
+        }
+    }
+
+    HashJoinCursor(HeapFile heapFile1, HeapFile heapFile2, int colIdx, int colIdx2)
+    {
+        this.buildFirst = heapFile1.getDataPageCount() <= heapFile2.getDataPageCount();
+        this.buildHeapFile = buildFirst ? heapFile1 : heapFile2;
+        this.probeHeapFile = buildFirst ? heapFile2 : heapFile1;
+        this.buildColIdx = buildFirst ? colIdx : colIdx2;
+        this.probeColIdx = buildFirst ? colIdx2 : colIdx;
+        this.textKeys = heapFile1.getReldef().getLayout().getKind(colIdx) != heapFile2.getReldef().getLayout().getKind(colIdx2);
+        this.joinLayout = new RowLayout(heapFile1.getReldef().getLayout(), heapFile2.getReldef().getLayout());
+    }
+
+    @Override
+    public Record next()
+    {
+        while(true)
+        {
+            if(matches != null)
+            {
+                while(matchPosition < matches.size())
+                {
+                    Record buildRecord = matches.get(matchPosition++);
+                    if(buildRecord.valueEquals(buildColIdx, probeRecord, probeColIdx))
+                        return buildFirst ? buildRecord.concat(probeRecord, joinLayout) : probeRecord.concat(buildRecord, joinLayout);
+                }
+            }
+            if(probeCursor != null && (probeRecord = probeCursor.next()) != null)
+            {
+                matches = table.get(probeRecord.hashValue(probeColIdx, textKeys));
+                matchPosition = 0;
+                continue;
+            }
+            matches = null;
+            if(!nextTable())
+                return null;
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        if(probeCursor != null)
+            probeCursor.close();
+        probeCursor = null;
+        buildCursor = null;
+        table = null;
+        if(partition != null)
+            partition.delete();
+        partition = null;
+        while(!partitions.isEmpty())
+            partitions.poll().delete();
+    }
+
+    /**
+     * Build the next hash table and open the cursor probing it : the whole build relation the first time, if it
+     * fits in memory, else the next block of records of the partition being joined or the next partition
+     * @return false if every record has been probed
+     */
+    private boolean nextTable()
+    {
+        if(probeCursor != null)
+            probeCursor.close();
+        probeCursor = null;
+        if(!started)
+        {
+            started = true;
+            if(buildInMemory())
+            {
+                probeCursor = probeHeapFile.openCursor();
+                return true;
+            }
+        }
+        if(buildCursor != null && loadBlock())
+        {
+            probeCursor = partition.probe.openCursor();
+            return true;
+        }
+        if(partition != null)
+            partition.delete();
+        while((partition = partitions.poll()) != null)
+        {
+            //a partition without any record on one side doesn't give any tuple
+            if(partition.build.getRecordCount() == 0 || partition.probe.getRecordCount() == 0)
+            {
+                partition.delete();
+                continue;
+            }
+            if(partition.build.getRecordCount() * getRecordSize() > getMemory() && partition.level < maxSplitLevel)
+            {
+                split(partition);
+                continue;
+            }
+            buildCursor = partition.build.openCursor();
+            if(loadBlock())
+            {
+                probeCursor = partition.probe.openCursor();
+                return true;
+            }
+            partition.delete();
+        }
+        close();
+        return false;
+    }
+
+    /**
+     * Build the hash table on the next records of the build partition, as many as fit in the join memory
+     * @return false if every record of the partition is already in a table
+     */
+    private boolean loadBlock()
+    {
+        table = new HashMap<>();
+        long blockSize = Math.max(1, getMemory() / getRecordSize());
+        long count = 0;
+        Record record = null;
+        while(count < blockSize && (record = buildCursor.next()) != null)
+        {
+            addToTable(record.copy());
+            count++;
+        }
+        if(record == null)
+            buildCursor = null;
+        return count > 0;
+    }
+
+    /**
+     * Build the hash table on the whole build relation, the relations being partitioned instead if it doesn't fit
+     * in the join memory
+     * @return true if the hash table holds the whole build relation
+     */
+    private boolean buildInMemory()
+    {
+        long memory = getMemory();
+        int recordSize = getRecordSize();
+        table = new HashMap<>();
+        HeapFileCursor cursor = buildHeapFile.openCursor();
+        long recordCount = 0;
+        Record record;
+        while((record = cursor.next()) != null)
+        {
+            recordCount++;
+            if(recordCount * recordSize > memory)
+            {
+                //the size of the relation is estimated from the part already read
+                long estimatedSize = recordCount * recordSize * buildHeapFile.getDataPageCount() / Math.max(1, cursor.getDataPageNumber());
+                cursor.close();
+                table = null;
+                partition((int) Math.min(estimatedSize / memory + 1, maxPartitionCount));
+                return false;
+            }
+            addToTable(record.copy());
+        }
+        return true;
+    }
+
+    /**
+     * Split both relations into partitions on the hash of their join column, each partition of the build relation
+     * being expected to fit in the join memory
+     * @param partitionCount    number of partitions
+     */
+    private void partition(int partitionCount)
+    {
+        SpillFile[] buildPartitions = createPartitions(partitionCount, buildHeapFile.getReldef().getLayout());
+        SpillFile[] probePartitions = createPartitions(partitionCount, probeHeapFile.getReldef().getLayout());
+        partition(buildHeapFile.openCursor(), buildColIdx, buildPartitions, 0);
+        partition(probeHeapFile.openCursor(), probeColIdx, probePartitions, 0);
+        for(int i = 0; i < partitionCount; i++)
+            partitions.add(new Partition(buildPartitions[i], probePartitions[i], 0));
+    }
+
+    /**
+     * Split a partition too large for the join memory into smaller ones, with another hash than the one which made
+     * it. The new partitions are joined before the other ones, so that few temporary files are kept at once.
+     * @param largePartition    partition, deleted once split
+     */
+    private void split(Partition largePartition)
+    {
+        int level = largePartition.level + 1;
+        long recordCount = largePartition.build.getRecordCount();
+        int partitionCount = (int) Math.min(recordCount * getRecordSize() / getMemory() + 1, maxPartitionCount);
+        SpillFile[] buildPartitions = createPartitions(partitionCount, buildHeapFile.getReldef().getLayout());
+        SpillFile[] probePartitions = createPartitions(partitionCount, probeHeapFile.getReldef().getLayout());
+        partition(largePartition.build.openCursor(), buildColIdx, buildPartitions, level);
+        partition(largePartition.probe.openCursor(), probeColIdx, probePartitions, level);
+        largePartition.delete();
+        for(int i = partitionCount - 1; i >= 0; i--)
+        {
+            //records which all stayed together share the same hash, another split wouldn't separate them either
+            int partitionLevel = buildPartitions[i].getRecordCount() == recordCount ? maxSplitLevel : level;
+            partitions.addFirst(new Partition(buildPartitions[i], probePartitions[i], partitionLevel));
+        }
+    }
+
+    /**
+     * Create the temporary files of new partitions of a relation
+     * @param partitionCount    number of partitions
+     * @param layout            layout of the records of the relation
+     * @return the partitions
+     */
+    private static SpillFile[] createPartitions(int partitionCount, RowLayout layout)
+    {
+        SpillFile[] newPartitions = new SpillFile[partitionCount];
+        for(int i = 0; i < partitionCount; i++)
+            newPartitions[i] = new SpillFile(layout);
+        return newPartitions;
+    }
+
+    /**
+     * Write each record read by a cursor into the partition matching the hash of its join column
+     * @param cursor        records of a relation or of a partition, closed once read
+     * @param colIdx        join column
+     * @param newPartitions partitions receiving the records
+     * @param level         number of times the records have already been split, each level using its own hash
+     */
+    private void partition(RecordCursor cursor, int colIdx, SpillFile[] newPartitions, int level)
+    {
+        Record record;
+        while((record = cursor.next()) != null)
+        {
+            //the hash is mixed so that the records of a partition still spread over the buckets of its table
+            int hash = (record.hashValue(colIdx, textKeys) ^ level * 0x85EBCA6B) * 0x9E3779B9;
+            newPartitions[Math.floorMod(hash >>> 16, newPartitions.length)].write(record);
+        }
+        cursor.close();
+    }
+
+    private long getMemory() {
+        return (long) Constants.getJoinMemory() * Constants.getPageSize();
+    }
+
+    private int getRecordSize() {
+        return buildHeapFile.getReldef().getLayout().getRecordSize();
+    }
+
+    /**
+     * Add a record of the build relation to the hash table
+     * @param record    record, kept by the table
+     */
+    private void addToTable(Record record)
+    {
+        table.computeIfAbsent(record.hashValue(buildColIdx, textKeys), k -> new ArrayList<>()).add(record);
+    }
+}
@@ -2,16 +2,19 @@ package source;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
 
 /**
  * Allows us to read and write records and therefore process commands
  */
 class HeapFile {
     private RelDef reldef;
+    private FreeSpaceMap freeSpaceMap;
 
     HeapFile(RelDef relDef)
     {
         this.reldef = relDef;
+        this.freeSpaceMap = new FreeSpaceMap(relDef);
     }
 
     /**
@@ -39,6 +42,9 @@ class HeapFile {
     private PageId addDataPage()
     {
         PageId pageId = DiskManager.getInstance().addPage(reldef.getFileIdx());
+        //a directory page comes first every pageSize/intSize pages, its entries are already set to 0 by the disk manager
+        if(FreeSpaceMap.isDirectoryPage(pageId.getPageIdx()))
+            pageId = DiskManager.getInstance().addPage(reldef.getFileIdx());
         //Set the bytes of the newly-added data page to 0
         ByteBuffer buffer = BufferManager.getInstance().getPage(pageId);
         for(int i = 0; i < Constants.getPageSize() && buffer.hasRemaining();i++) {
@@ -46,51 +52,39 @@ class HeapFile {
         }
         buffer.rewind();
         BufferManager.getInstance().freePage(pageId,true);
-        //Retrieve the Header Page and update it
-        PageId headerPageId = new PageId(reldef.getFileIdx(),0);
-        ByteBuffer bufferHeaderPage = BufferManager.getInstance().getPage(headerPageId);
-        //Update the number of data pages in the file registered by the Header Page
-        bufferHeaderPage.rewind();
-        int dataPageCount = bufferHeaderPage.getInt();
-        dataPageCount++;
-        bufferHeaderPage.rewind();
-        bufferHeaderPage.putInt(dataPageCount);
-        //Update the slotCount of the newly-added data page in the Header Page
-        bufferHeaderPage.putInt(Constants.getIntSize()*pageId.getPageIdx(),reldef.getSlotCount());
-        bufferHeaderPage.rewind();
-        BufferManager.getInstance().freePage(headerPageId,true);
+        //Update the data page count and the slotCount of the newly-added data page in the directory
+        freeSpaceMap.addDataPage(pageId, reldef.getSlotCount());
         return pageId;
     }
 
+    /**
+     * Append a data page already filled with records at the end of the file, the page being written once on disk
+     * without going through the buffer pool
+     * @param bufferDataPage    buffer holding the whole data page, slot map included
+     */
+    void appendDataPage(ByteBuffer bufferDataPage)
+    {
+        int availableSlots = reldef.isSlottedPages() ? reldef.getSlottedPage().getAvailableSpace(bufferDataPage)
+                : reldef.getSlotCount() - countUsedSlots(bufferDataPage);
+        int pageIdx = FreeSpaceMap.toPageIdx(freeSpaceMap.getDataPageCount() + 1);
+        //the directory page covering the new data page has to be added first
+        if(pageIdx > 1 && FreeSpaceMap.isDirectoryPage(pageIdx - 1))
+            DiskManager.getInstance().addPage(reldef.getFileIdx());
+        PageId pageId = DiskManager.getInstance().addPage(reldef.getFileIdx(), bufferDataPage);
+        //Update the data page count and the slotCount of the data page in the directory, once for the whole page
+        freeSpaceMap.addDataPage(pageId, availableSlots);
+    }
+
     /**
      * Look for a free data page
      * @return  PageId if a free page is found, else null
      */
     private PageId getFreeDataPageId()
     {
-        PageId pageId = null;
-        PageId headerPageId = new PageId(reldef.getFileIdx(),0);
-        ByteBuffer bufferHeaderPage = BufferManager.getInstance().getPage(headerPageId);
-        bufferHeaderPage.rewind();
-        //Use the data page count to make sure a data page exists, if it does, look for a free one, if it doesn't,
-        // return null
-        int dataPageCount = bufferHeaderPage.getInt();
-        bufferHeaderPage.position(4);
-        boolean found = false;
-        int pageIdx = 0;
-        for(int i = 1; !found && i <= dataPageCount && bufferHeaderPage.hasRemaining(); i++)
-        {
-            int availableSlot = bufferHeaderPage.getInt();
-            if(availableSlot > 0)
-            {
-                found = true;
-                pageIdx = i;
-            }
-        }
-        BufferManager.getInstance().freePage(headerPageId,false);
-        if(found)
-            pageId = new PageId(reldef.getFileIdx(),pageIdx);
-        return pageId;
+        int dataPageNumber = freeSpaceMap.findPageWithRoom();
+        if(dataPageNumber < 0)
+            return null;
+        return new PageId(reldef.getFileIdx(),FreeSpaceMap.toPageIdx(dataPageNumber));
     }
 
     /**
@@ -101,101 +95,249 @@ class HeapFile {
      */
     private Rid writeRecordToDataPage(Record record, PageId pageId)
     {
-        //the current data page is considered free
-        boolean found = false;
-        //soon-to-be-used slot position where the selected record will be written
-        int slotIdx = 0;
         ByteBuffer bufferDataPage = BufferManager.getInstance().getPage(pageId);
-        bufferDataPage.rewind();
-        int byteMapPosition = 0;
-        for(int i = 0; i < reldef.getSlotCount() && !found; i++)
+        if(reldef.isSlottedPages())
         {
-            byteMapPosition = i;
-            //found is set at true when a byte at 0 (free) is found in the bytemap
-            found = bufferDataPage.get() == 0;
-           if(found)
-               slotIdx = reldef.getSlotCount() + reldef.getRecordSize()*i;
+            SlottedPage slottedPage = reldef.getSlottedPage();
+            int availableSpace = slottedPage.getAvailableSpace(bufferDataPage);
+            //the page comes from the free space map, it has room for the longest record
+            int slotNumber = slottedPage.insert(bufferDataPage, record.data, record.position);
+            int usedSpace = availableSpace - slottedPage.getAvailableSpace(bufferDataPage);
+            BufferManager.getInstance().freePage(pageId,true);
+            freeSpaceMap.updateAvailableSlots(pageId, -usedSpace);
+            return new Rid(pageId,slotNumber);
         }
+        //the page comes from the free space map, a free slot is always found
+        int slotNumber = findFreeSlot(bufferDataPage);
+        //soon-to-be-used slot position where the selected record will be written
+        int slotIdx = reldef.getSlotMapSize() + reldef.getRecordSize()*slotNumber;
         record.writeToBuffer(bufferDataPage,slotIdx);
-        //update the bytemap -> mark the used slot as occupied (byte at 1)
-        bufferDataPage.rewind();
-        bufferDataPage.put(byteMapPosition,(byte)1);
+        //update the slot map -> mark the used slot as occupied
+        setSlotUsed(bufferDataPage, slotNumber, true);
         BufferManager.getInstance().freePage(pageId,true);
-        //Retrieve the Header Page and update it
-        PageId headerPageId = new PageId(reldef.getFileIdx(),0);
-        ByteBuffer bufferHeaderPage = BufferManager.getInstance().getPage(headerPageId);
-        //Update the number of slots of the selected data page registered by the Header Page
-        bufferHeaderPage.rewind();
-        //Update the slotCount of the data page in the Header Page, here the slotCount represents the number of
+        //Update the slotCount of the data page in the directory, here the slotCount represents the number of
         // available slots
-        int slotCount = bufferHeaderPage.getInt(pageId.getPageIdx()*Constants.getIntSize());
-        slotCount--;
-        bufferHeaderPage.rewind();
-        bufferHeaderPage.putInt(pageId.getPageIdx()*Constants.getIntSize(),slotCount);
-        bufferHeaderPage.rewind();
-        BufferManager.getInstance().freePage(headerPageId,true);
+        freeSpaceMap.updateAvailableSlots(pageId, -1);
         return new Rid(pageId,slotIdx);
     }
 
     /**
      * Get a list of records from a data page by reading them one by one
      * @param pageId        PageId
+     * @param ring          ring of the bulk read the page belongs to, null for a regular access
+     * @param keepPinned    true to leave the page pinned and read its records in place, the caller unpinning it once
+     *                      they aren't needed anymore (a page without any record is unpinned anyway)
      * @return list of records
      */
-    private ArrayList<Record>  getRecordsInDataPage(PageId pageId)
+    private ArrayList<Record>  getRecordsInDataPage(PageId pageId, BufferRing ring, boolean keepPinned)
     {
         ArrayList<Record> recordsList = new ArrayList<>();
-        ByteBuffer bufferDataPage = BufferManager.getInstance().getPage(pageId);
-        bufferDataPage.rewind();
-
-        int recordsCount = 0, slotIdx;
-        boolean found;
-        for(int i = 0; bufferDataPage.hasRemaining() && i < reldef.getSlotCount(); i++)
+        ByteBuffer bufferDataPage = BufferManager.getInstance().getPage(pageId, ring);
+        if(reldef.isSlottedPages())
+        {
+            for(int i = 0; i < reldef.getSlottedPage().getSlotCount(bufferDataPage); i++)
+            {
+                if(reldef.getSlottedPage().isUsed(bufferDataPage, i))
+                    recordsList.add(readRecord(bufferDataPage, pageId, i, keepPinned));
+            }
+        }
+        else if(reldef.isBitmapSlots())
+        {
+            //the bitmap is read 64 slots at a time, empty words being skipped
+            for(int word = 0; word*Long.SIZE < reldef.getSlotCount(); word++)
+            {
+                long usedSlots = bufferDataPage.getLong(word*Long.BYTES);
+                while(usedSlots != 0)
+                {
+                    int slotNumber = word*Long.SIZE + Long.numberOfTrailingZeros(usedSlots);
+                    recordsList.add(readRecord(bufferDataPage, pageId, slotNumber, keepPinned));
+                    //clear the lowest bit set
+                    usedSlots &= usedSlots - 1;
+                }
+            }
+        }
+        else
         {
-            bufferDataPage.rewind();
-            bufferDataPage.position(i);
-            //found is set at true when a byte at 1 (occupied) is found in the bytemap
-            found = bufferDataPage.get() == 1;
-            if(found)
+            for(int i = 0; i < reldef.getSlotCount(); i++)
             {
-                //Start the buffer position after the bytemap and at the right record
-                slotIdx = reldef.getSlotCount() + reldef.getRecordSize()*i;
-                recordsList.add(new Record(reldef,new Rid(pageId,slotIdx)));
-                recordsList.get(recordsCount).readFromBuffer(bufferDataPage,slotIdx);
-                recordsCount++;
+                //a byte at 1 in the bytemap marks an occupied slot
+                if(bufferDataPage.get(i) == 1)
+                    recordsList.add(readRecord(bufferDataPage, pageId, i, keepPinned));
             }
         }
-        BufferManager.getInstance().freePage(pageId,false);
+        if(!keepPinned || recordsList.isEmpty())
+            BufferManager.getInstance().freePage(pageId,false);
         return recordsList;
     }
 
+    /**
+     * Read the record of a slot
+     * @param bufferDataPage    buffer of the data page
+     * @param pageId            PageId of the data page
+     * @param slotNumber        number of the slot in the page
+     * @return record
+     */
+    Record readRecord(ByteBuffer bufferDataPage, PageId pageId, int slotNumber)
+    {
+        return readRecord(bufferDataPage, pageId, slotNumber, false);
+    }
+
+    /**
+     * Read the record of a slot, copied or in place
+     * @param bufferDataPage    buffer of the data page
+     * @param pageId            PageId of the data page
+     * @param slotNumber        number of the slot in the page
+     * @param inPlace           true to get a view of the record valid as long as the page is pinned
+     * @return record
+     */
+    private Record readRecord(ByteBuffer bufferDataPage, PageId pageId, int slotNumber, boolean inPlace)
+    {
+        //a record of a slotted page is decoded into the fixed layout, its rid holding the slot number
+        if(reldef.isSlottedPages())
+        {
+            Record record = new Record(reldef,new Rid(pageId,slotNumber));
+            reldef.getSlottedPage().decode(bufferDataPage, slotNumber, record.data, 0);
+            return record;
+        }
+        //Start the buffer position after the slot map and at the right record
+        int slotIdx = reldef.getSlotMapSize() + reldef.getRecordSize()*slotNumber;
+        if(inPlace)
+        {
+            RecordView view = new RecordView(reldef);
+            view.moveTo(bufferDataPage, pageId, slotIdx);
+            return view;
+        }
+        Record record = new Record(reldef,new Rid(pageId,slotIdx));
+        record.readFromBuffer(bufferDataPage,slotIdx);
+        return record;
+    }
+
+    /**
+     * Look for the first free slot of a data page
+     * @param bufferDataPage    buffer of the data page
+     * @return slot number, -1 if the page is full
+     */
+    private int findFreeSlot(ByteBuffer bufferDataPage)
+    {
+        if(!reldef.isBitmapSlots())
+        {
+            for(int i = 0; i < reldef.getSlotCount(); i++)
+            {
+                //a byte at 0 in the bytemap marks a free slot
+                if(bufferDataPage.get(i) == 0)
+                    return i;
+            }
+            return -1;
+        }
+        for(int word = 0; word*Long.SIZE < reldef.getSlotCount(); word++)
+        {
+            long usedSlots = bufferDataPage.getLong(word*Long.BYTES);
+            //the first bit at 0 of the word is the first free slot
+            if(usedSlots != -1L)
+            {
+                int slotNumber = word*Long.SIZE + Long.numberOfTrailingZeros(~usedSlots);
+                return slotNumber < reldef.getSlotCount() ? slotNumber : -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Count the occupied slots of a data page
+     * @param bufferDataPage    buffer of the data page
+     * @return number of records in the page
+     */
+    private int countUsedSlots(ByteBuffer bufferDataPage)
+    {
+        int recordCount = 0;
+        if(reldef.isBitmapSlots())
+        {
+            for(int word = 0; word*Long.SIZE < reldef.getSlotCount(); word++)
+                recordCount += Long.bitCount(bufferDataPage.getLong(word*Long.BYTES));
+        }
+        else
+        {
+            for(int i = 0; i < reldef.getSlotCount(); i++)
+                recordCount += bufferDataPage.get(i);
+        }
+        return recordCount;
+    }
+
+    /**
+     * Mark a slot of a data page as occupied or free in its slot map
+     * @param bufferDataPage    buffer of the data page
+     * @param slotNumber        number of the slot in the page
+     * @param used              true if a record is written in the slot, false if it's deleted
+     */
+    void setSlotUsed(ByteBuffer bufferDataPage, int slotNumber, boolean used)
+    {
+        if(!reldef.isBitmapSlots())
+        {
+            bufferDataPage.put(slotNumber,(byte)(used ? 1 : 0));
+            return;
+        }
+        int wordPosition = slotNumber/Long.SIZE*Long.BYTES;
+        long mask = 1L << (slotNumber % Long.SIZE);
+        long usedSlots = bufferDataPage.getLong(wordPosition);
+        bufferDataPage.putLong(wordPosition, used ? usedSlots | mask : usedSlots & ~mask);
+    }
+
     /** Retrieve the records present in the data page
      * @param currentDataPageNumber int
      * @return list of records present in the data page
      */
     ArrayList<Record> getRecordsInDataPage(int currentDataPageNumber)
+    {
+        return getRecordsInDataPage(currentDataPageNumber, null);
+    }
+
+    /** Retrieve the records present in the data page, as part of a bulk read of the relation
+     * @param currentDataPageNumber int
+     * @param ring                  ring of the bulk read, null for a regular access
+     * @return list of records present in the data page
+     */
+    ArrayList<Record> getRecordsInDataPage(int currentDataPageNumber, BufferRing ring)
+    {
+        return getRecordsInDataPage(currentDataPageNumber, freeSpaceMap.getDataPageCount(), ring, false);
+    }
+
+    /** Retrieve the records present in the data page and leave it pinned, as part of a read of the relation by blocks
+     * of pages
+     * @param currentDataPageNumber int
+     * @param lastDataPageNumber    last data page of the block, the next ones not being read in advance
+     * @param ring                  ring of the bulk read, null for a regular access
+     * @return list of records read in place in the data page, the caller unpinning it with {@link #unpinDataPage} once
+     * they aren't needed anymore (a page without any record is never left pinned)
+     */
+    ArrayList<Record> getPinnedRecordsInDataPage(int currentDataPageNumber, int lastDataPageNumber, BufferRing ring)
+    {
+        return getRecordsInDataPage(currentDataPageNumber, lastDataPageNumber, ring, true);
+    }
+
+    /** Retrieve the records present in the data page, as part of a bulk read of the relation
+     * @param currentDataPageNumber int
+     * @param lastDataPageNumber    last data page read in advance
+     * @param ring                  ring of the bulk read, null for a regular access
+     * @param keepPinned            true to leave the page pinned and read its records in place
+     * @return list of records present in the data page
+     */
+    private ArrayList<Record> getRecordsInDataPage(int currentDataPageNumber, int lastDataPageNumber, BufferRing ring, boolean keepPinned)
     {
         ArrayList<Record> records = null;
-        //Retrieve the Header Page and pick the data page count
-        PageId headerPageId = new PageId(reldef.getFileIdx(),0);
-        ByteBuffer bufferHeaderPage = BufferManager.getInstance().getPage(headerPageId);
-        bufferHeaderPage.rewind();
-        int dataPageCount = bufferHeaderPage.getInt();
+        int dataPageCount = freeSpaceMap.getDataPageCount();
         if(currentDataPageNumber <= dataPageCount)
         {
-            bufferHeaderPage.rewind();
-            bufferHeaderPage.position(currentDataPageNumber*Constants.getIntSize());
-            int availableSlots = bufferHeaderPage.getInt();
+            int availableSlots = freeSpaceMap.getAvailableSlots(currentDataPageNumber);
+            //the next data pages are read in advance while this one is decoded
+            prefetchNextDataPages(currentDataPageNumber, Math.min(dataPageCount, lastDataPageNumber), ring);
             //check the number of occupied slots for each data page and get their records
             if(availableSlots < reldef.getSlotCount())
-                records = getRecordsInDataPage(new PageId(reldef.getFileIdx(),currentDataPageNumber));
+                records = getRecordsInDataPage(new PageId(reldef.getFileIdx(),FreeSpaceMap.toPageIdx(currentDataPageNumber)), ring, keepPinned);
             //records should only return null when the number of the data page we want to explore exceeds the total
             //number of data page
             else
                 records = new ArrayList<>();
         }
-        //free the page as soon as we don't use it anymore
-        BufferManager.getInstance().freePage(headerPageId,false);
        return records;
     }
 
@@ -214,6 +356,36 @@ class HeapFile {
         return writeRecordToDataPage(record, pageId);
     }
 
+    /**
+     * Open a cursor reading the records of the heapfile one at a time
+     * @return cursor
+     */
+    HeapFileCursor openCursor()
+    {
+        return new HeapFileCursor(this, null);
+    }
+
+    /**
+     * Open a cursor reading the records of the heapfile matching a predicate, one at a time
+     * @param predicate     condition on a column, evaluated before decoding the records
+     * @return cursor
+     */
+    HeapFileCursor openCursor(ColumnPredicate predicate)
+    {
+        return new HeapFileCursor(this, predicate);
+    }
+
+    /**
+     * Open a cursor reading the records of a range of data pages of the heapfile, one at a time
+     * @param firstDataPageNumber   first data page read
+     * @param lastDataPageNumber    last data page read
+     * @return cursor
+     */
+    HeapFileCursor openCursor(int firstDataPageNumber, int lastDataPageNumber)
+    {
+        return new HeapFileCursor(this, null, firstDataPageNumber, lastDataPageNumber);
+    }
+
     /**
      * Select every record from the heapfile
      * @return  records list
@@ -221,25 +393,60 @@ class HeapFile {
     ArrayList<Record> getAllRecords()
     {
         ArrayList<Record> recordList = new ArrayList<>();
-        //Retrieve the Header Page and pick the data page count
-        PageId headerPageId = new PageId(reldef.getFileIdx(),0);
-        ByteBuffer bufferHeaderPage = BufferManager.getInstance().getPage(headerPageId);
-        bufferHeaderPage.rewind();
-        int dataPageCount = bufferHeaderPage.getInt();
-        //index starts at 1 because Header Page is at 0, without checking if the buffer has remaining space because the buffer position is moved by another method, making it go out of this loop
-        for(int i = 1; i <= dataPageCount; i++)
-        {
-            //The header is often used, put the position back where we were
-            bufferHeaderPage.rewind();
-            bufferHeaderPage.position(i*Constants.getIntSize());
-            int availableSlots = bufferHeaderPage.getInt();
-            //check the number of occupied slots for each data page and get their records
-            if(availableSlots < reldef.getSlotCount())
-                recordList.addAll(getRecordsInDataPage(new PageId(reldef.getFileIdx(),i)));
+        HeapFileCursor cursor = openCursor();
+        Record record;
+        while((record = cursor.next()) != null)
+            recordList.add(record.copy());
+        return recordList;
+    }
 
+    /**
+     * Ask the buffer manager to read in advance the next data pages holding records, pages already in the pool
+     * being ignored
+     * @param currentDataPageNumber number of the data page being read
+     * @param dataPageCount         number of data pages of the file
+     * @param ring                  ring of the bulk read, null for a regular access
+     */
+    void prefetchNextDataPages(int currentDataPageNumber, int dataPageCount, BufferRing ring)
+    {
+        int depth = Constants.getPrefetchDepth();
+        //the prefetched pages must not take the frame of the current page in the ring
+        if(ring != null)
+            depth = Math.min(depth, ring.getCapacity() - 1);
+        int lastDataPageNumber = Math.min(dataPageCount, currentDataPageNumber + depth);
+        for(int i = currentDataPageNumber + 1; i <= lastDataPageNumber; i++)
+        {
+            if(freeSpaceMap.getAvailableSlots(i) < reldef.getSlotCount())
+                BufferManager.getInstance().prefetch(new PageId(reldef.getFileIdx(),FreeSpaceMap.toPageIdx(i)), ring);
         }
-        BufferManager.getInstance().freePage(headerPageId,false);
-        return recordList;
+    }
+
+    /**
+     * Get the number of available slots of a data page from the free space map
+     * @param dataPageNumber    data page number
+     * @return available slots
+     */
+    int getAvailableSlots(int dataPageNumber)
+    {
+        return freeSpaceMap.getAvailableSlots(dataPageNumber);
+    }
+
+    /**
+     * Get the number of data pages of the file from the free space map
+     * @return data page count
+     */
+    int getDataPageCount()
+    {
+        return freeSpaceMap.getDataPageCount();
+    }
+
+    /**
+     * Unpin a data page left pinned by a bulk read of its records
+     * @param dataPageNumber    data page number
+     */
+    void unpinDataPage(int dataPageNumber)
+    {
+        BufferManager.getInstance().freePage(new PageId(reldef.getFileIdx(),FreeSpaceMap.toPageIdx(dataPageNumber)),false);
     }
 
     RelDef getReldef() {
@@ -251,41 +458,107 @@ class HeapFile {
      * Change the slot indicator from 1 to 0 to show the record "doesn't exist" anymore and that it's a free usable slot,
      * no need to replace its data since the slot won't be visited until it's replaced by another record
      * @param pageId        PageId
-     * @param slotIdx       position of the record in the page
+     * @param slotIdx       position of the record in the page, slot number for a slotted page
      */
     void deleteRecordFromDataPage(PageId pageId, int slotIdx)
     {
-        int byteMapPosition;
         ByteBuffer bufferDataPage = BufferManager.getInstance().getPage(pageId);
-        bufferDataPage.rewind();
-        //Update the bytemap -> mark the used slot as free (byte at 0)
-        byteMapPosition = (slotIdx-reldef.getSlotCount())/reldef.getRecordSize();
-        bufferDataPage.rewind();
-        bufferDataPage.put(byteMapPosition,(byte)0);
+        if(reldef.isSlottedPages())
+        {
+            int availableSpace = reldef.getSlottedPage().getAvailableSpace(bufferDataPage);
+            reldef.getSlottedPage().delete(bufferDataPage, slotIdx);
+            int freedSpace = reldef.getSlottedPage().getAvailableSpace(bufferDataPage) - availableSpace;
+            BufferManager.getInstance().freePage(pageId,true);
+            freeSpaceMap.updateAvailableSlots(pageId, freedSpace);
+            return;
+        }
+        //Update the slot map -> mark the used slot as free
+        setSlotUsed(bufferDataPage, (slotIdx-reldef.getSlotMapSize())/reldef.getRecordSize(), false);
         BufferManager.getInstance().freePage(pageId,true);
-        //Retrieve the Header Page and update it
-        PageId headerPageId = new PageId(reldef.getFileIdx(),0);
-        ByteBuffer bufferHeaderPage = BufferManager.getInstance().getPage(headerPageId);
-        bufferHeaderPage.rewind();
-        //Update the number of slots (slotCount) of the selected data page registered by the Header Page, here the slotCount represents the number of available slots
-        int slotCount = bufferHeaderPage.getInt(pageId.getPageIdx()*Constants.getIntSize());
-        slotCount++;
-        bufferHeaderPage.rewind();
-        bufferHeaderPage.putInt(pageId.getPageIdx()*Constants.getIntSize(),slotCount);
-        BufferManager.getInstance().freePage(headerPageId,true);
+        //Update the number of slots (slotCount) of the selected data page in the directory, here the slotCount represents the number of available slots
+        freeSpaceMap.updateAvailableSlots(pageId, +1);
+    }
+
+    /**
+     * Move the records of the last data pages into the free slots of the first ones, then remove the data pages left
+     * empty at the end of the file. Every page before the last one holding records is full afterwards.
+     * @param movedRids     receives the new rid of each moved record, by its former rid
+     */
+    void vacuum(HashMap<Rid, Rid> movedRids)
+    {
+        int dataPageCount = freeSpaceMap.getDataPageCount();
+        //a page receiving records was the first one with room, the pages before it are full and it's never emptied
+        boolean targetsLeft = true;
+        for(int source = dataPageCount; source > 0 && targetsLeft; source--)
+        {
+            if(freeSpaceMap.getAvailableSlots(source) == reldef.getSlotCount())
+                continue;
+            PageId sourcePageId = new PageId(reldef.getFileIdx(),FreeSpaceMap.toPageIdx(source));
+            for(Record record : getRecordsInDataPage(sourcePageId, null, false))
+            {
+                int target = freeSpaceMap.findPageWithRoom();
+                if(target < 0 || target >= source)
+                {
+                    targetsLeft = false;
+                    break;
+                }
+                Rid newRid = writeRecordToDataPage(record, new PageId(reldef.getFileIdx(),FreeSpaceMap.toPageIdx(target)));
+                deleteRecordFromDataPage(sourcePageId, record.getRid().getSlotIdx());
+                movedRids.put(record.getRid(), newRid);
+            }
+        }
+        int keptDataPageCount = dataPageCount;
+        while(keptDataPageCount > 0 && freeSpaceMap.getAvailableSlots(keptDataPageCount) == reldef.getSlotCount())
+            keptDataPageCount--;
+        if(keptDataPageCount < dataPageCount)
+        {
+            freeSpaceMap.removeLastDataPages(keptDataPageCount);
+            //the removed pages mustn't be written back into the file once it has been cut
+            BufferManager.getInstance().discardPages(reldef.getFileIdx(), getPageCount());
+            DiskManager.getInstance().truncate(reldef.getFileIdx(), getPageCount());
+        }
+    }
+
+    /**
+     * @return number of pages of the file, directory pages included
+     */
+    int getPageCount()
+    {
+        int dataPageCount = freeSpaceMap.getDataPageCount();
+        return dataPageCount == 0 ? 1 : FreeSpaceMap.toPageIdx(dataPageCount) + 1;
+    }
+
+    /**
+     * @return percentage of the space of the data pages used by records
+     */
+    int getOccupancy()
+    {
+        return freeSpaceMap.getOccupancy();
+    }
+
+    /**
+     * Give the number of records of the relation from the free space map, without reading its pages
+     * @return number of records, or for slotted pages the number of the shortest records the used space could hold
+     */
+    long getMaxRecordCount()
+    {
+        if(reldef.isSlottedPages())
+            return freeSpaceMap.getUsedSlotCount() / (reldef.getSlottedPage().getMinRecordSize() + SlottedPage.slotSize);
+        return freeSpaceMap.getUsedSlotCount();
     }
 
     /**
      * select every record from the heapfile using their rids
-     * @param rids          rids list, each associated to record from the same relation
-     * @return  records list
+     * @param rids          rids list, each associated to record from the same relation, sorted by page
+     * @return  records list, in the order of the rids, the rids of deleted records being skipped
      */
     ArrayList<Record> getAllRecordsFromRids(ArrayList<Rid> rids)
     {
         ArrayList<Record> records = new ArrayList<>();
+        if(rids.isEmpty())
+            return records;
         PageId currentPageId = rids.get(0).getPageId();
         ByteBuffer bufferDataPage = BufferManager.getInstance().getPage(currentPageId);
-        int recordsCount = 0;
         for(Rid rid : rids)
         {
             if(!rid.getPageId().equals(currentPageId))
@@ -294,11 +567,34 @@ class HeapFile {
                 bufferDataPage = BufferManager.getInstance().getPage(rid.getPageId());
                 currentPageId = rid.getPageId();
             }
-            records.add(new Record(reldef,new Rid(rid.getPageId(),rid.getSlotIdx())));
-            records.get(recordsCount).readFromBuffer(bufferDataPage,rid.getSlotIdx());
-            recordsCount++;
+            //an index still gives the rid of a record deleted after its creation
+            if(!isSlotUsed(bufferDataPage, rid.getSlotIdx()))
+                continue;
+            if(reldef.isSlottedPages())
+                records.add(readRecord(bufferDataPage, rid.getPageId(), rid.getSlotIdx()));
+            else
+            {
+                Record record = new Record(reldef,new Rid(rid.getPageId(),rid.getSlotIdx()));
+                record.readFromBuffer(bufferDataPage,rid.getSlotIdx());
+                records.add(record);
+            }
         }
         BufferManager.getInstance().freePage(currentPageId,false);
         return records;
     }
+
+    /**
+     * @param bufferDataPage    buffer of the data page
+     * @param slotIdx           position of the record in its rid
+     * @return true if the slot of the rid holds a record
+     */
+    private boolean isSlotUsed(ByteBuffer bufferDataPage, int slotIdx)
+    {
+        if(reldef.isSlottedPages())
+            return slotIdx < reldef.getSlottedPage().getSlotCount(bufferDataPage) && reldef.getSlottedPage().isUsed(bufferDataPage, slotIdx);
+        int slotNumber = (slotIdx-reldef.getSlotMapSize())/reldef.getRecordSize();
+        if(!reldef.isBitmapSlots())
+            return bufferDataPage.get(slotNumber) == 1;
+        return (bufferDataPage.getLong(slotNumber/Long.SIZE*Long.BYTES) >>> (slotNumber % Long.SIZE) & 1) != 0;
+    }
 }
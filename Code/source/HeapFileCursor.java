@@ -0,0 +1,175 @@
+package source;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Cursor reading the records of a heap file page by page, only the data page being read is pinned in the buffer pool.
+ * A predicate can be given to return only the records matching it. The records are returned as a single view of the
+ * data page, valid until the next call. The records of a slotted page are decoded one at a time into the fixed layout.
+ */
+class HeapFileCursor implements RecordCursor {
+    private HeapFile heapFile;
+    private RelDef reldef;
+    //condition evaluated on the bytes of each record, null to return every record
+    private ColumnPredicate predicate;
+    //last data page read, the cursor can be limited to a range of data pages
+    private int lastDataPageNumber;
+    private BufferRing ring;
+    private int dataPageNumber;
+    //data page being read, pinned until its last record is returned
+    private PageId pageId = null;
+    private ByteBuffer bufferDataPage;
+    //next slot to look at in a bytemap or a slotted page, first slot of the current word in a bitmap
+    private int slotNumber;
+    //occupied slots of the current word of the bitmap not returned yet
+    private long usedSlots;
+    //view moved to each record returned, nothing is allocated for the records read
+    private RecordView view;
+    //record of a slotted page decoded into the fixed layout, null for fixed slots
+    private ByteBuffer decodedRecord;
+
+    HeapFileCursor(HeapFile heapFile, ColumnPredicate predicate)
+    {
+        this(heapFile, predicate, 1, heapFile.getDataPageCount());
+    }
+
+    /**
+     * @param heapFile              heap file
+     * @param predicate             condition on a column, null to return every record
+     * @param firstDataPageNumber   first data page read
+     * @param lastDataPageNumber    last data page read
+     */
+    HeapFileCursor(HeapFile heapFile, ColumnPredicate predicate, int firstDataPageNumber, int lastDataPageNumber)
+    {
+        this.heapFile = heapFile;
+        this.reldef = heapFile.getReldef();
+        this.predicate = predicate;
+        this.view = new RecordView(reldef);
+        if(reldef.isSlottedPages())
+            this.decodedRecord = ByteBuffer.allocate(reldef.getRecordSize());
+        //no page is read if no record can match
+        this.lastDataPageNumber = predicate != null && predicate.matchesNothing() ? 0 : lastDataPageNumber;
+        this.dataPageNumber = firstDataPageNumber - 1;
+        //a large relation is read through its own ring so that it doesn't evict the whole buffer pool, even by ranges
+        this.ring = BufferRing.forScan(this.lastDataPageNumber == 0 ? 0 : heapFile.getDataPageCount());
+    }
+
+    @Override
+    public Record next()
+    {
+        while(true)
+        {
+            if(pageId != null)
+            {
+                int slot;
+                while((slot = nextUsedSlot()) >= 0)
+                {
+                    if(decodedRecord != null)
+                    {
+                        reldef.getSlottedPage().decode(bufferDataPage, slot, decodedRecord, 0);
+                        if(predicate == null || predicate.matches(decodedRecord, 0))
+                        {
+                            view.moveTo(decodedRecord, 0, pageId, slot);
+                            return view;
+                        }
+                        continue;
+                    }
+                    int slotIdx = reldef.getSlotMapSize() + reldef.getRecordSize()*slot;
+                    //only the matching records are returned
+                    if(predicate == null || predicate.matches(bufferDataPage, slotIdx))
+                    {
+                        view.moveTo(bufferDataPage, pageId, slotIdx);
+                        return view;
+                    }
+                }
+                close();
+            }
+            if(!nextDataPage())
+                return null;
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        if(pageId != null)
+        {
+            BufferManager.getInstance().freePage(pageId,false);
+            pageId = null;
+        }
+    }
+
+    /**
+     * @return number of the data page being read, 0 before the first one
+     */
+    int getDataPageNumber()
+    {
+        return dataPageNumber;
+    }
+
+    /**
+     * Pin the next data page holding records
+     * @return false if there isn't any data page left
+     */
+    private boolean nextDataPage()
+    {
+        while(dataPageNumber < lastDataPageNumber)
+        {
+            dataPageNumber++;
+            //the next data pages are read in advance while this one is decoded
+            heapFile.prefetchNextDataPages(dataPageNumber, lastDataPageNumber, ring);
+            //the pages without any record aren't read
+            if(heapFile.getAvailableSlots(dataPageNumber) < reldef.getSlotCount())
+            {
+                pageId = new PageId(reldef.getFileIdx(),FreeSpaceMap.toPageIdx(dataPageNumber));
+                bufferDataPage = BufferManager.getInstance().getPage(pageId, ring);
+                slotNumber = 0;
+                if(reldef.isBitmapSlots() && decodedRecord == null)
+                    usedSlots = bufferDataPage.getLong(0);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Look for the next occupied slot of the current data page
+     * @return slot number, -1 if every record of the page has been returned
+     */
+    private int nextUsedSlot()
+    {
+        if(decodedRecord != null)
+        {
+            while(slotNumber < reldef.getSlottedPage().getSlotCount(bufferDataPage))
+            {
+                int slot = slotNumber++;
+                if(reldef.getSlottedPage().isUsed(bufferDataPage, slot))
+                    return slot;
+            }
+            return -1;
+        }
+        if(!reldef.isBitmapSlots())
+        {
+            while(slotNumber < reldef.getSlotCount())
+            {
+                int slot = slotNumber++;
+                //a byte at 1 in the bytemap marks an occupied slot
+                if(bufferDataPage.get(slot) == 1)
+                    return slot;
+            }
+            return -1;
+        }
+        //the empty words of the bitmap are skipped
+        while(usedSlots == 0)
+        {
+            slotNumber += Long.SIZE;
+            if(slotNumber >= reldef.getSlotCount())
+                return -1;
+            usedSlots = bufferDataPage.getLong(slotNumber/Long.SIZE*Long.BYTES);
+        }
+        int slot = slotNumber + Long.numberOfTrailingZeros(usedSlots);
+        //clear the lowest bit set
+        usedSlots &= usedSlots - 1;
+        return slot;
+    }
+}
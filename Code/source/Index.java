@@ -6,6 +6,8 @@ class Index {
     private String relName;
     private int colIdx;
     private Tree tree;
+    //the tree is only built when the index is created, the records inserted afterwards aren't in it
+    private boolean outdated = false;
 
     Index(String relName, int colIdx, Tree tree)
     {
@@ -25,4 +27,12 @@ class Index {
     Tree getTree() {
         return tree;
     }
+
+    boolean isOutdated() {
+        return outdated;
+    }
+
+    void setOutdated(boolean outdated) {
+        this.outdated = outdated;
+    }
 }
@@ -0,0 +1,140 @@
+package source;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Index nested loops equi-join : the 1st relation is read once, the B+tree index on the join column of the 2nd
+ * relation being searched for each of its records. The rids found for a batch of records are sorted by page before
+ * their records are read, so that each page of the 2nd relation is read once by batch.
+ */
+class IndexNestedLoopJoinCursor implements RecordCursor {
+    private HeapFile heapFile1;
+    private HeapFile heapFile2;
+    private int colIdx;
+    private int colIdx2;
+    private Tree tree;
+    private HeapFileCursor cursorRel1;
+    //layout of the tuples, the columns of the 1st relation followed by those of the 2nd one
+    private RowLayout joinLayout;
+    //rids found in the index for the current batch, sorted by page, with the record of the 1st relation of each one
+    private ArrayList<Rid> batchRids = new ArrayList<>();
+    private ArrayList<Record> batchRecordsRel1 = new ArrayList<>();
+    //records of the 2nd relation read for the batch, in the order of their rids
+    private ArrayList<Record> batchRecordsRel2 = new ArrayList<>();
+    private int positionInBatch = 0;
+    private int positionInRecordsRel2 = 0;
+
+    /**
+     * @param heapFile1 outer relation
+     * @param heapFile2 inner relation
+     * @param colIdx    join column of the 1st relation, an int column
+     * @param colIdx2   join column of the 2nd relation
+     * @param index     index on the join column of the 2nd relation
+     */
+    IndexNestedLoopJoinCursor(HeapFile heapFile1, HeapFile heapFile2, int colIdx, int colIdx2, Index index)
+    {
+        this.heapFile1 = heapFile1;
+        this.heapFile2 = heapFile2;
+        this.colIdx = colIdx;
+        this.colIdx2 = colIdx2;
+        this.tree = index.getTree();
+        this.cursorRel1 = heapFile1.openCursor();
+        this.joinLayout = new RowLayout(heapFile1.getReldef().getLayout(), heapFile2.getReldef().getLayout());
+    }
+
+    /**
+     * Compare the cost of the join with the one of a hash join, reading the whole 2nd relation
+     * @param heapFile1 outer relation
+     * @param heapFile2 inner relation
+     * @return true if the 1st relation has fewer records than the 2nd one has data pages, each search in the index
+     * reading about one page of the 2nd relation
+     */
+    static boolean isCheaper(HeapFile heapFile1, HeapFile heapFile2)
+    {
+        return heapFile1.getMaxRecordCount() < heapFile2.getDataPageCount();
+    }
+
+    @Override
+    public Record next()
+    {
+        while(true)
+        {
+            while(positionInBatch < batchRids.size())
+            {
+                Rid rid = batchRids.get(positionInBatch);
+                Record recordRel1 = batchRecordsRel1.get(positionInBatch++);
+                //the rids of the records deleted since the creation of the index don't have any record
+                if(positionInRecordsRel2 == batchRecordsRel2.size() || !batchRecordsRel2.get(positionInRecordsRel2).getRid().equals(rid))
+                    continue;
+                Record recordRel2 = batchRecordsRel2.get(positionInRecordsRel2++);
+                if(recordRel1.valueEquals(colIdx, recordRel2, colIdx2))
+                    return recordRel1.concat(recordRel2, joinLayout);
+            }
+            if(!nextBatch())
+                return null;
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        cursorRel1.close();
+    }
+
+    /**
+     * Search the index for the next records of the 1st relation, until the records of the batch and those of the 2nd
+     * relation they match would fill the join memory, then read the records of the 2nd relation
+     * @return false if every record of the 1st relation has been joined
+     */
+    private boolean nextBatch()
+    {
+        batchRids.clear();
+        batchRecordsRel1.clear();
+        positionInBatch = 0;
+        positionInRecordsRel2 = 0;
+        long memory = (long) Constants.getJoinMemory() * Constants.getPageSize();
+        int recordSize = heapFile1.getReldef().getRecordSize();
+        int recordSize2 = heapFile2.getReldef().getRecordSize();
+        long batchSize = 0;
+        Record record;
+        while(batchSize < memory && (record = cursorRel1.next()) != null)
+        {
+            ArrayList<Rid> rids = tree.getRoot().searchChild(record.getInt(colIdx));
+            if(rids == null || rids.isEmpty())
+                continue;
+            Record copy = record.copy();
+            for(Rid rid : rids)
+            {
+                batchRids.add(rid);
+                batchRecordsRel1.add(copy);
+            }
+            batchSize += recordSize + (long) recordSize2 * rids.size();
+        }
+        if(batchRids.isEmpty())
+            return false;
+        sortByPage();
+        batchRecordsRel2 = heapFile2.getAllRecordsFromRids(batchRids);
+        return true;
+    }
+
+    /**
+     * Sort the rids of the batch by page, along with the record of the 1st relation of each one
+     */
+    private void sortByPage()
+    {
+        Integer[] order = new Integer[batchRids.size()];
+        for(int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, (i, j) -> batchRids.get(i).compareTo(batchRids.get(j)));
+        ArrayList<Rid> sortedRids = new ArrayList<>(order.length);
+        ArrayList<Record> sortedRecords = new ArrayList<>(order.length);
+        for(int i : order)
+        {
+            sortedRids.add(batchRids.get(i));
+            sortedRecords.add(batchRecordsRel1.get(i));
+        }
+        batchRids = sortedRids;
+        batchRecordsRel1 = sortedRecords;
+    }
+}
@@ -0,0 +1,65 @@
+package source;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with power of 2 buckets : bucket i counts the durations between 2^(i-1) and 2^i nanoseconds
+ */
+class LatencyHistogram {
+    private static final int bucketCount = 64;
+    private AtomicLongArray buckets = new AtomicLongArray(bucketCount);
+    private LongAdder count = new LongAdder();
+    private LongAdder totalNanos = new LongAdder();
+
+    /**
+     * Record a single duration
+     * @param nanos duration in nanoseconds
+     */
+    void record(long nanos)
+    {
+        int bucket = Math.min(bucketCount - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, nanos)));
+        buckets.incrementAndGet(bucket);
+        count.increment();
+        totalNanos.add(nanos);
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    double getMeanMicros()
+    {
+        long currentCount = count.sum();
+        return currentCount == 0 ? 0 : totalNanos.sum() / 1000.0 / currentCount;
+    }
+
+    /**
+     * Give an upper bound of the selected percentile, precise up to a factor of 2
+     * @param percentile    percentile between 0 and 100
+     * @return upper bound of the bucket reaching the percentile, in microseconds
+     */
+    double getPercentileMicros(double percentile)
+    {
+        long currentCount = count.sum();
+        if(currentCount == 0)
+            return 0;
+        long threshold = (long) Math.ceil(currentCount * percentile / 100);
+        long seen = 0;
+        for(int i = 0; i < bucketCount; i++)
+        {
+            seen += buckets.get(i);
+            if(seen >= threshold)
+                return (1L << i) / 1000.0;
+        }
+        return (1L << (bucketCount - 2)) / 1000.0;
+    }
+
+    void reset()
+    {
+        for(int i = 0; i < bucketCount; i++)
+            buckets.set(i, 0);
+        count.reset();
+        totalNanos.reset();
+    }
+}
@@ -1,10 +1,13 @@
 package source;
 
+import java.util.Arrays;
 import java.util.Scanner;
 
 public class Main{
   public static void main(String[] args)
   {
+      //optional arguments after the redirection one, as "key=value" (e.g. frameCount=64 storage=mmap)
+      Constants.loadConfiguration(Arrays.copyOfRange(args, Math.min(1, args.length), args.length));
       DBManager.getInstance().init();
       String command = "";
       Scanner scanner = new Scanner(System.in);
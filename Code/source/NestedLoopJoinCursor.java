@@ -0,0 +1,139 @@
+package source;
+
+import java.util.ArrayList;
+
+/**
+ * Block nested loops equi-join : the data pages of the 1st relation are pinned in the buffer pool by blocks, the 2nd
+ * relation being read once for each block, the resulting tuples being returned as soon as they're found. A block of
+ * a single page gives the page-oriented nested loops join.
+ */
+class NestedLoopJoinCursor implements RecordCursor {
+    private HeapFile heapFile1;
+    private HeapFile heapFile2;
+    private int colIdx;
+    private int colIdx2;
+    //maximum number of data pages of the 1st relation pinned at the same time
+    private int blockSize;
+    //the pages of the 1st relation are read only once, through their own ring
+    private BufferRing ring;
+    private int currentDataPageNumber = 1;
+    //data pages of the 1st relation pinned for the current block
+    private ArrayList<Integer> blockDataPageNumbers = new ArrayList<>();
+    //records of the current block, read in place in its pages
+    private ArrayList<Record> recordsFromBlock = new ArrayList<>();
+    private HeapFileCursor cursorRel2 = null;
+    //current record of the 2nd relation, compared to each record of the block
+    private Record recordRel2 = null;
+    private int positionInBlock = 0;
+    //layout of the tuples, the columns of the 1st relation followed by those of the 2nd one
+    private RowLayout joinLayout;
+
+    /**
+     * @param heapFile1 outer relation
+     * @param heapFile2 inner relation
+     * @param colIdx    join column of the 1st relation
+     * @param colIdx2   join column of the 2nd relation
+     * @param blockSize number of data pages of the 1st relation by block
+     */
+    NestedLoopJoinCursor(HeapFile heapFile1, HeapFile heapFile2, int colIdx, int colIdx2, int blockSize)
+    {
+        this.heapFile1 = heapFile1;
+        this.heapFile2 = heapFile2;
+        this.colIdx = colIdx;
+        this.colIdx2 = colIdx2;
+        this.blockSize = blockSize;
+        //the ring holds a whole block and the pages prefetched for the next one
+        if(BufferRing.forScan(heapFile1.getDataPageCount()) != null)
+            this.ring = new BufferRing(Math.max(Constants.getScanRingSize(), blockSize + Constants.getPrefetchDepth()));
+        this.joinLayout = new RowLayout(heapFile1.getReldef().getLayout(), heapFile2.getReldef().getLayout());
+    }
+
+    /**
+     * Choose the number of data pages of the 1st relation pinned at the same time, from the frames of the pool left
+     * once the 2nd relation has the frames its scan needs and the next pages of the 1st one are prefetched
+     * @param heapFile2 inner relation
+     * @param requested block size asked by the user, 0 to use the largest one
+     * @return block size, at least 1
+     */
+    static int chooseBlockSize(HeapFile heapFile2, int requested)
+    {
+        //a large relation is read through its ring, a small one is kept in the pool between two blocks
+        int innerFrames = BufferRing.forScan(heapFile2.getDataPageCount()) != null
+                ? Math.min(Constants.getScanRingSize(), Constants.getFrameCount() - 1)
+                : heapFile2.getDataPageCount() + 1;
+        int maxBlockSize = Math.min(BufferManager.getInstance().getUnpinnedFrameCount() - innerFrames - Constants.getPrefetchDepth(),
+                Constants.getJoinMemory());
+        if(requested > 0)
+            maxBlockSize = Math.min(requested, maxBlockSize);
+        return Math.max(1, maxBlockSize);
+    }
+
+    @Override
+    public Record next()
+    {
+        while(true)
+        {
+            if(recordRel2 != null)
+            {
+                while(positionInBlock < recordsFromBlock.size())
+                {
+                    Record recordRel1 = recordsFromBlock.get(positionInBlock++);
+                    if(recordRel1.valueEquals(colIdx, recordRel2, colIdx2))
+                        return recordRel1.concat(recordRel2, joinLayout);
+                }
+            }
+            //compare the next record of the 2nd relation to the block
+            if(cursorRel2 != null && (recordRel2 = cursorRel2.next()) != null)
+            {
+                positionInBlock = 0;
+                continue;
+            }
+            if(!nextBlock())
+                return null;
+            cursorRel2 = heapFile2.openCursor();
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        if(cursorRel2 != null)
+            cursorRel2.close();
+        unpinBlock();
+    }
+
+    /**
+     * Pin the next data pages of the 1st relation holding records, up to the block size
+     * @return false if there aren't any more data pages to explore in the 1st relation
+     */
+    private boolean nextBlock()
+    {
+        unpinBlock();
+        //the pages after the block would be evicted by the scan of the 2nd relation before being read
+        int lastDataPageNumber = currentDataPageNumber + blockSize - 1;
+        ArrayList<Record> recordsFromPage;
+        //the empty data pages are skipped
+        while(blockDataPageNumbers.size() < blockSize
+                && (recordsFromPage = heapFile1.getPinnedRecordsInDataPage(currentDataPageNumber, lastDataPageNumber, ring)) != null)
+        {
+            if(!recordsFromPage.isEmpty())
+            {
+                blockDataPageNumbers.add(currentDataPageNumber);
+                recordsFromBlock.addAll(recordsFromPage);
+            }
+            currentDataPageNumber++;
+        }
+        return !blockDataPageNumbers.isEmpty();
+    }
+
+    /**
+     * Unpin the data pages of the current block, its records can't be read anymore
+     */
+    private void unpinBlock()
+    {
+        for(int dataPageNumber : blockDataPageNumbers)
+            heapFile1.unpinDataPage(dataPageNumber);
+        blockDataPageNumbers.clear();
+        recordsFromBlock.clear();
+    }
+}
@@ -33,4 +33,10 @@ public class PageId {
         isEqual = true;
         return isEqual;
     }
+
+    @Override
+    public int hashCode()
+    {
+        return 31 * fileIdx + pageIdx;
+    }
 }
@@ -0,0 +1,379 @@
+package source;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parallel hash equi-join : both relations are read by ranges of data pages by a fork-join pool, each worker splitting
+ * the records it reads into its own partitions on the hash of their join column. The hash table of each partition of
+ * the smaller relation is built by a single task. The other relation is then read by chunks of data pages fitting in
+ * the join memory left by the tables, each partition of a chunk probing only the table of the same partition, in its
+ * own task, which hands its tuples by batches to the calling thread as soon as they're found.
+ * No lock is shared by the workers apart from the buffer pool.
+ */
+class ParallelHashJoinCursor implements RecordCursor {
+    //number of tuples handed at once by a worker
+    private static final int batchSize = 256;
+    private HeapFile buildHeapFile;
+    private HeapFile probeHeapFile;
+    private int buildColIdx;
+    private int probeColIdx;
+    //true if the hash tables are built on the 1st relation, whose columns come first in the tuples
+    private boolean buildFirst;
+    //values of columns of different kinds are compared, and hashed, as they're displayed
+    private boolean textKeys;
+    private RowLayout joinLayout;
+    private int threadCount;
+    private int partitionCount;
+    private ForkJoinPool pool = null;
+    //records of each partition of the build relation by hash of their join column
+    private ArrayList<HashMap<Integer, ArrayList<Record>>> tables;
+    //partitions filled by each worker while reading the build relation or a chunk of the probe relation
+    private ThreadLocal<ArrayList<ArrayList<Record>>> workerPartitions;
+    private ConcurrentLinkedQueue<ArrayList<ArrayList<Record>>> partitionsOfWorkers = new ConcurrentLinkedQueue<>();
+    //number of data pages of the probe relation read at once
+    private int probeChunkSize;
+    private ForkJoinTask<?> probing = null;
+    //tuples found by the workers, the number of batches waiting to be returned is bounded
+    private BlockingQueue<ArrayList<Record>> batches;
+    private ArrayList<Record> batch = null;
+    private int positionInBatch = 0;
+    //stops the workers once the cursor is closed
+    private volatile boolean closed = false;
+
+    ParallelHashJoinCursor(HeapFile heapFile1, HeapFile heapFile2, int colIdx, int colIdx2)
+    {
+        this.buildFirst = heapFile1.getDataPageCount() <= heapFile2.getDataPageCount();
+        this.buildHeapFile = buildFirst ? heapFile1 : heapFile2;
+        this.probeHeapFile = buildFirst ? heapFile2 : heapFile1;
+        this.buildColIdx = buildFirst ? colIdx : colIdx2;
+        this.probeColIdx = buildFirst ? colIdx2 : colIdx;
+        this.textKeys = heapFile1.getReldef().getLayout().getKind(colIdx) != heapFile2.getReldef().getLayout().getKind(colIdx2);
+        this.joinLayout = new RowLayout(heapFile1.getReldef().getLayout(), heapFile2.getReldef().getLayout());
+        //each worker only pins the page it reads, the pages prefetched after it are skipped when no frame is left
+        this.threadCount = Math.max(1, Math.min(Constants.getJoinThreads(), BufferManager.getInstance().getUnpinnedFrameCount()));
+        this.batches = new ArrayBlockingQueue<>(threadCount * 4);
+        //more partitions than workers so that the tables are built evenly
+        this.partitionCount = threadCount * 4;
+        //the records of a data page take at most a page once copied, each worker reads at least a page of a chunk
+        long memory = (long) Constants.getJoinMemory() * Constants.getPageSize();
+        long tablesSize = buildHeapFile.getMaxRecordCount() * buildHeapFile.getReldef().getLayout().getRecordSize();
+        this.probeChunkSize = (int) Math.max(threadCount, (memory - tablesSize) / Constants.getPageSize());
+        tables = new ArrayList<>(partitionCount);
+        for(int i = 0; i < partitionCount; i++)
+            tables.add(null);
+    }
+
+    /**
+     * Check that the hash tables can be kept in memory, the relations being partitioned in temporary files by a
+     * single thread otherwise
+     * @param heapFile1 1st relation
+     * @param heapFile2 2nd relation
+     * @return true if the records of the smaller relation fit in the join memory
+     */
+    static boolean fitsInMemory(HeapFile heapFile1, HeapFile heapFile2)
+    {
+        HeapFile buildHeapFile = heapFile1.getDataPageCount() <= heapFile2.getDataPageCount() ? heapFile1 : heapFile2;
+        long memory = (long) Constants.getJoinMemory() * Constants.getPageSize();
+        return buildHeapFile.getMaxRecordCount() * buildHeapFile.getReldef().getLayout().getRecordSize() <= memory;
+    }
+
+    @Override
+    public Record next()
+    {
+        while(true)
+        {
+            if(batch != null && positionInBatch < batch.size())
+                return batch.get(positionInBatch++);
+            if(!nextBatch())
+                return null;
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        closed = true;
+        batches.clear();
+        batch = null;
+        if(pool != null)
+        {
+            //the workers release their pages before the pool can be used by the next command
+            pool.shutdownNow();
+            try
+            {
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+            }catch(InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+            }
+            pool = null;
+        }
+        tables = null;
+    }
+
+    /**
+     * Wait for the next batch of tuples found by the workers, the hash tables being built and the probe started at
+     * the first call
+     * @return false if every record has been probed
+     */
+    private boolean nextBatch()
+    {
+        if(closed)
+            return false;
+        try
+        {
+            if(pool == null)
+            {
+                //a worker waiting for the calling thread to take its tuples isn't replaced by a new thread, which
+                //would pin one more page
+                pool = new ForkJoinPool(threadCount, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, false,
+                        0, threadCount, 1, saturatedPool -> true, 60, TimeUnit.SECONDS);
+                newWorkerPartitions();
+                pool.invoke(new RangeReader(buildHeapFile, 1, buildHeapFile.getDataPageCount(), buildColIdx));
+                pool.invoke(new TableBuilder(0, partitionCount));
+                probing = pool.submit(new ProbeReader());
+            }
+            positionInBatch = 0;
+            while((batch = batches.poll(10, TimeUnit.MILLISECONDS)) == null)
+            {
+                //the last batches are handed before the end of the probe
+                if(probing.isDone() && (batch = batches.poll()) == null)
+                {
+                    probing.join();
+                    close();
+                    return false;
+                }
+            }
+            return true;
+        }catch(InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            close();
+            return false;
+        }catch(RuntimeException re)
+        {
+            close();
+            throw re;
+        }
+    }
+
+    /**
+     * Give each worker new empty partitions, the ones filled before being dropped
+     */
+    private void newWorkerPartitions()
+    {
+        partitionsOfWorkers.clear();
+        workerPartitions = ThreadLocal.withInitial(() -> {
+            ArrayList<ArrayList<Record>> partitions = new ArrayList<>(partitionCount);
+            for(int i = 0; i < partitionCount; i++)
+                partitions.add(new ArrayList<>());
+            partitionsOfWorkers.add(partitions);
+            return partitions;
+        });
+    }
+
+    /**
+     * Take the records of a partition out of the partitions of every worker
+     * @param partition partition number
+     * @return records of the partition
+     */
+    private ArrayList<Record> collectPartition(int partition)
+    {
+        ArrayList<Record> records = new ArrayList<>();
+        for(ArrayList<ArrayList<Record>> partitions : partitionsOfWorkers)
+        {
+            records.addAll(partitions.get(partition));
+            partitions.set(partition, null);
+        }
+        return records;
+    }
+
+    /**
+     * Partition of a hash value, the hash being mixed so that the records of a partition still spread over the buckets
+     * of its table
+     * @param hash  hash of a join value
+     * @return partition number
+     */
+    private int partitionOf(int hash)
+    {
+        return Math.floorMod((hash * 0x9E3779B9) >>> 16, partitionCount);
+    }
+
+    /**
+     * Task reading a range of data pages of a relation and copying its records into the partitions of the worker,
+     * split in two until the range is small enough for the work to be shared by the workers
+     */
+    private class RangeReader extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private HeapFile heapFile;
+        private int firstDataPageNumber;
+        private int lastDataPageNumber;
+        //join column of the relation
+        private int colIdx;
+
+        RangeReader(HeapFile heapFile, int firstDataPageNumber, int lastDataPageNumber, int colIdx)
+        {
+            this.heapFile = heapFile;
+            this.firstDataPageNumber = firstDataPageNumber;
+            this.lastDataPageNumber = lastDataPageNumber;
+            this.colIdx = colIdx;
+        }
+
+        @Override
+        protected void compute()
+        {
+            int rangeSize = Math.max(1, heapFile.getDataPageCount() / (threadCount * 4));
+            if(lastDataPageNumber - firstDataPageNumber >= rangeSize)
+            {
+                int middle = (firstDataPageNumber + lastDataPageNumber) / 2;
+                invokeAll(new RangeReader(heapFile, firstDataPageNumber, middle, colIdx),
+                        new RangeReader(heapFile, middle + 1, lastDataPageNumber, colIdx));
+                return;
+            }
+            ArrayList<ArrayList<Record>> partitions = workerPartitions.get();
+            HeapFileCursor cursor = heapFile.openCursor(firstDataPageNumber, lastDataPageNumber);
+            try
+            {
+                Record record;
+                while(!closed && (record = cursor.next()) != null)
+                    partitions.get(partitionOf(record.hashValue(colIdx, textKeys))).add(record.copy());
+            }finally
+            {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Task reading the probe relation by chunks of data pages, the partitions of each chunk being probed before the
+     * next chunk is read
+     */
+    private class ProbeReader extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void compute()
+        {
+            int dataPageCount = probeHeapFile.getDataPageCount();
+            for(int first = 1; first <= dataPageCount && !closed; first += probeChunkSize)
+            {
+                newWorkerPartitions();
+                new RangeReader(probeHeapFile, first, Math.min(first + probeChunkSize - 1, dataPageCount), probeColIdx).invoke();
+                new PartitionProber(0, partitionCount).invoke();
+            }
+            partitionsOfWorkers.clear();
+        }
+    }
+
+    /**
+     * Task joining the records of a range of partitions of the probe chunk to the table of the same partition, split
+     * until a single partition is left
+     */
+    private class PartitionProber extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private int firstPartition;
+        private int endPartition;
+
+        /**
+         * @param firstPartition    first partition probed
+         * @param endPartition      partition after the last one probed
+         */
+        PartitionProber(int firstPartition, int endPartition)
+        {
+            this.firstPartition = firstPartition;
+            this.endPartition = endPartition;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if(endPartition - firstPartition > 1)
+            {
+                int middle = (firstPartition + endPartition) / 2;
+                invokeAll(new PartitionProber(firstPartition, middle), new PartitionProber(middle, endPartition));
+                return;
+            }
+            try
+            {
+                probe(tables.get(firstPartition), collectPartition(firstPartition));
+            }catch(InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Join the records of a partition of the probe chunk to the records of the build relation with the same value
+         * @param table         hash table of the partition
+         * @param probeRecords  records of the partition
+         * @throws InterruptedException if interrupted while handing a batch
+         */
+        private void probe(HashMap<Integer, ArrayList<Record>> table, ArrayList<Record> probeRecords) throws InterruptedException
+        {
+            ArrayList<Record> tuples = new ArrayList<>(batchSize);
+            for(Record probeRecord : probeRecords)
+            {
+                if(closed)
+                    return;
+                ArrayList<Record> matches = table.get(probeRecord.hashValue(probeColIdx, textKeys));
+                if(matches == null)
+                    continue;
+                for(Record buildRecord : matches)
+                {
+                    if(buildRecord.valueEquals(buildColIdx, probeRecord, probeColIdx))
+                        tuples.add(buildFirst ? buildRecord.concat(probeRecord, joinLayout) : probeRecord.concat(buildRecord, joinLayout));
+                }
+                if(tuples.size() >= batchSize)
+                {
+                    batches.put(tuples);
+                    tuples = new ArrayList<>(batchSize);
+                }
+            }
+            if(!closed && !tuples.isEmpty())
+                batches.put(tuples);
+        }
+    }
+
+    /**
+     * Task building the hash tables of a range of partitions, split until a single partition is left
+     */
+    private class TableBuilder extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private int firstPartition;
+        private int endPartition;
+
+        /**
+         * @param firstPartition    first partition built
+         * @param endPartition      partition after the last one built
+         */
+        TableBuilder(int firstPartition, int endPartition)
+        {
+            this.firstPartition = firstPartition;
+            this.endPartition = endPartition;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if(endPartition - firstPartition > 1)
+            {
+                int middle = (firstPartition + endPartition) / 2;
+                invokeAll(new TableBuilder(firstPartition, middle), new TableBuilder(middle, endPartition));
+                return;
+            }
+            HashMap<Integer, ArrayList<Record>> table = new HashMap<>();
+            //the records of the partition read by every worker
+            for(Record record : collectPartition(firstPartition))
+                table.computeIfAbsent(record.hashValue(buildColIdx, textKeys), k -> new ArrayList<>()).add(record);
+            tables.set(firstPartition, table);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package source;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Threads reading in advance the pages a scan will soon request, into frames reserved by the buffer manager
+ */
+class Prefetcher {
+    private static Prefetcher instance = null;
+    //up to 4 reads at the same time, enough to hide the latency of a slow disk during a sequential scan
+    private static final int maxThreadCount = 4;
+    private ExecutorService executor;
+
+    private Prefetcher()
+    {
+        int threadCount = Math.max(1, Math.min(maxThreadCount, Constants.getPrefetchDepth()));
+        this.executor = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "prefetcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    static Prefetcher getInstance()
+    {
+        if(instance == null)
+            instance = new Prefetcher();
+        return instance;
+    }
+
+    /**
+     * Read the page of a reserved frame in the background, the frame stays pinned until the read is over
+     * @param frame frame reserved for the page
+     */
+    void submit(Frame frame)
+    {
+        //read while the frame is pinned, it can't be given to another page meanwhile
+        PageId pageId = frame.getPageId();
+        ByteBuffer buffer = frame.getBuffer();
+        executor.execute(() -> {
+            try
+            {
+                DiskManager.getInstance().readPage(pageId, buffer);
+            }finally
+            {
+                BufferManager.getInstance().prefetchCompleted(frame);
+            }
+        });
+    }
+}
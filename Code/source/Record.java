@@ -4,103 +4,152 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
 /**
- * Contains the structure of a record associated to a relation along with its values list
+ * Contains a record associated to a relation, its values being kept encoded as in a data page and only converted
+ * to text to be displayed
  */
 class Record {
 
-    private RelDef reldef;
+    protected RowLayout layout;
     private Rid rid;
-    private ArrayList<String> values = new ArrayList<>();
+    //buffer holding the values encoded following the layout of the relation, and position of the record in it
+    protected ByteBuffer data;
+    protected int position = 0;
 
     Record(RelDef reldef, ArrayList<String> values)
     {
-        this.reldef = reldef;
-        this.values = values;
+        this.layout = reldef.getLayout();
+        this.data = ByteBuffer.allocate(layout.getRecordSize());
+        for(int j = 0; j < layout.getColumnCount(); j++)
+            layout.writeValue(data, 0, j, values.get(j));
     }
 
     Record(RelDef reldef, Rid rid)
     {
-        this.reldef = reldef;
+        this.layout = reldef.getLayout();
         this.rid = rid;
+        this.data = ByteBuffer.allocate(layout.getRecordSize());
+    }
+
+    Record(RowLayout layout, ByteBuffer data)
+    {
+        this.layout = layout;
+        this.data = data;
     }
 
     /**
-     * write values of a record into the buffer, one by one
+     * write values of a record into the buffer, all at once
      * @param buffer    Bytebuffer buffer
      * @param position  position in the buffer
      */
     void writeToBuffer(ByteBuffer buffer, int position)
     {
-        try
-        {
-            buffer.rewind();
-            buffer.position(position);
-            for(int j = 0; buffer.hasRemaining() && j < reldef.getTypes_col().size(); j++)
-            {
-                //int : stored with 4 bytes
-                if(reldef.getTypes_col().get(j).equals("int"))
-                    buffer.putInt(Integer.parseInt(values.get(j)));
-                    //float : stored with 4 bytes
-                else if(reldef.getTypes_col().get(j).equals("float"))
-                    buffer.putFloat(Float.parseFloat(values.get(j)));
-
-                    //string : stored with x*2 bytes  when x is the number of character of the string type (stringx, see reldef definition)
-                else if(reldef.getTypes_col().get(j).startsWith("string"))
-                {
-                    //String current_string = reldef.getTypes_col().get(j).substring(6);
-                    String currentString = values.get(j);
-                    for(int h = 0; h < currentString.length() && buffer.hasRemaining(); h++)
-                    {
-                        buffer.putChar(currentString.charAt(h));
-                    }
-                }
-            }
-        }catch (NullPointerException np)
-        {
-            np.printStackTrace();
-        }
+        buffer.put(position, data, this.position, layout.getRecordSize());
     }
 
     /**
-     * read from buffer values from a record, one by one
+     * read from buffer values from a record, all at once
      * @param buffer    Bytebuffer buffer
      * @param position  position in the buffer
      */
     void readFromBuffer(ByteBuffer buffer, int position)
     {
-        buffer.rewind();
-        String columnType;
-        buffer.position(position);
-        for(int j = 0; buffer.hasRemaining() && j < reldef.getTypes_col().size(); j++)
-        {
-            columnType =  reldef.getTypes_col().get(j);
-            switch(columnType)
-            {
-                case "int" :
-                    values.add(String.valueOf(buffer.getInt()));
-                break;
-
-                case "float" :
-                    values.add(String.valueOf(buffer.getFloat()));
-                break;
-                //String case
-                default:
-                    StringBuilder string_array = new StringBuilder();
-                    int characNumber = Integer.parseInt(columnType.substring(6));
-                    for(int h = 0; h < characNumber && buffer.hasRemaining(); h++)
-                    {
-                        string_array.append(buffer.getChar());
-                    }
-                        values.add(string_array.toString());
-                break;
-            }
-        }
+        data.put(this.position, buffer, position, layout.getRecordSize());
+    }
+
+    /**
+     * Copy the record into its own buffer, so that it can be kept once the page it comes from is released
+     * @return copy of the record
+     */
+    Record copy()
+    {
+        Record copy = new Record(layout, ByteBuffer.allocate(layout.getRecordSize()));
+        copy.readFromBuffer(data, position);
+        copy.setRid(getRid());
+        return copy;
     }
 
+    /**
+     * Get the value of an int column, the value of another column being parsed from its text
+     * @param col   column index
+     * @return value
+     */
+    int getInt(int col)
+    {
+        if(layout.getKind(col) == RowLayout.intColumn)
+            return data.getInt(position + layout.getOffset(col));
+        return Integer.parseInt(layout.readText(data, position, col));
+    }
+
+    /**
+     * Compare a column of the record to a column of another record
+     * @param col       column of the record
+     * @param other     other record
+     * @param otherCol  column of the other record
+     * @return true if the values are displayed the same way
+     */
+    boolean valueEquals(int col, Record other, int otherCol)
+    {
+        return layout.valuesEqual(data, position, col, other.layout, other.data, other.position, otherCol);
+    }
+
+    /**
+     * Order a column of the record and a column of another record, two values being equal when valueEquals is true
+     * @param col       column of the record
+     * @param other     other record
+     * @param otherCol  column of the other record
+     * @param asText    true to compare the values as they're displayed, when they're ordered along with the values
+     *                  of a column of another kind
+     * @return negative, 0 or positive if the value of the record is lower, equal or greater
+     */
+    int compareValue(int col, Record other, int otherCol, boolean asText)
+    {
+        if(asText)
+            return layout.readText(data, position, col).compareTo(other.layout.readText(other.data, other.position, otherCol));
+        return layout.compareValues(data, position, col, other.layout, other.data, other.position, otherCol);
+    }
+
+    /**
+     * Hash the value of a column, to look for the records with an equal value
+     * @param col       column index
+     * @param asText    true to hash the value as it's displayed, when it's compared to a column of another kind
+     * @return hash of the value
+     */
+    int hashValue(int col, boolean asText)
+    {
+        if(asText)
+            return layout.readText(data, position, col).hashCode();
+        return layout.hashValue(data, position, col);
+    }
+
+    /**
+     * Create the tuple made of the values of the record followed by those of another record
+     * @param other         other record
+     * @param joinLayout    layout of the tuple, made of the layouts of both records
+     * @return tuple
+     */
+    Record concat(Record other, RowLayout joinLayout)
+    {
+        ByteBuffer joined = ByteBuffer.allocate(joinLayout.getRecordSize());
+        joined.put(0, data, position, layout.getRecordSize());
+        joined.put(layout.getRecordSize(), other.data, other.position, other.layout.getRecordSize());
+        return new Record(joinLayout, joined);
+    }
+
+    /**
+     * Convert the values to text, to display them
+     * @return values list
+     */
     ArrayList<String> getValues() {
+        ArrayList<String> values = new ArrayList<>();
+        for(int j = 0; j < layout.getColumnCount(); j++)
+            values.add(layout.readText(data, position, j));
         return values;
     }
 
+    RowLayout getLayout() {
+        return layout;
+    }
+
     void setRid(Rid rid) {
         this.rid = rid;
     }
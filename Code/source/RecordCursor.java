@@ -0,0 +1,20 @@
+package source;
+
+/**
+ * Records of a relation, or of an operation on relations, returned one at a time as they are read
+ */
+interface RecordCursor {
+
+    /**
+     * Get the next record, which may only be valid until the next call : it has to be copied to be kept
+     * @return record, null once every record has been returned
+     */
+    Record next();
+
+    /**
+     * Release the page the cursor may hold before it has returned every record
+     */
+    default void close()
+    {
+    }
+}
@@ -0,0 +1,53 @@
+package source;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Record read in place in its data page : the same view is moved from slot to slot during a scan, its values being
+ * decoded only when asked. It's valid as long as the page is pinned, copy() gives a record that can be kept.
+ */
+class RecordView extends Record {
+    private PageId pageId;
+    private int slotIdx;
+
+    RecordView(RelDef reldef)
+    {
+        super(reldef.getLayout(), null);
+    }
+
+    RecordView(RowLayout layout)
+    {
+        super(layout, null);
+    }
+
+    /**
+     * Point the view at another record
+     * @param bufferDataPage    buffer of the data page
+     * @param pageId            PageId of the data page
+     * @param slotIdx           position of the record in the page
+     */
+    void moveTo(ByteBuffer bufferDataPage, PageId pageId, int slotIdx)
+    {
+        moveTo(bufferDataPage, slotIdx, pageId, slotIdx);
+    }
+
+    /**
+     * Point the view at a record decoded outside of its data page
+     * @param buffer    buffer holding the record
+     * @param position  position of the record in the buffer
+     * @param pageId    PageId of the data page
+     * @param slotIdx   slot of the record in the page
+     */
+    void moveTo(ByteBuffer buffer, int position, PageId pageId, int slotIdx)
+    {
+        this.data = buffer;
+        this.position = position;
+        this.pageId = pageId;
+        this.slotIdx = slotIdx;
+    }
+
+    @Override
+    Rid getRid() {
+        return new Rid(pageId,slotIdx);
+    }
+}
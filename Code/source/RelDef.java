@@ -7,20 +7,59 @@ import java.util.ArrayList;
  * Class which contains the basic structure of a relation
  */
 class RelDef implements Serializable {
+  //value computed from the first version of the class, the catalogs saved since then remain readable
+  private static final long serialVersionUID = -3018841716174761165L;
   private String relName;
   private int nb_col;
   private ArrayList<String> types_col = new ArrayList<>();
   private int fileIdx;
   private int recordSize;
   private int slotCount;
+  //false for the relations created when data pages used one byte per slot, the field being absent from their catalog
+  private boolean bitmapSlots;
+  //true for the relations created with the "slotted" option, false for those created before it existed
+  private boolean slottedPages;
+  //compiled from the column types when first needed, it isn't saved in the catalog
+  private transient RowLayout layout;
+  private transient SlottedPage slottedPage;
 
-  RelDef(String relName, int nb_col, ArrayList<String> types_col, int fileIdx, int recordSize, int slotCount){
+  /**
+   * @param recordSize  size of a record in the fixed layout
+   * @param slotCount   number of slots of a data page, or number of bytes of an empty slotted page
+   * @param slottedPages true if the records are written in slotted pages, with their strings of variable length
+   */
+  RelDef(String relName, int nb_col, ArrayList<String> types_col, int fileIdx, int recordSize, int slotCount, boolean slottedPages){
     this.relName = relName;
     this.nb_col = nb_col;
     this.types_col = types_col;
     this.fileIdx = fileIdx;
     this.recordSize = recordSize;
     this.slotCount = slotCount;
+    this.bitmapSlots = true;
+    this.slottedPages = slottedPages;
+  }
+
+  /**
+   * Compute the number of records a data page can hold, one bit per slot being used to know if it's occupied
+   * @param recordSize  size of a record
+   * @return slot count
+   */
+  static int computeSlotCount(int recordSize)
+  {
+    int slotCount = Constants.getPageSize()*8/(recordSize*8 + 1);
+    //the bitmap is read as 64-bit words, the last one may not be full
+    while(getBitmapSize(slotCount) + slotCount*recordSize > Constants.getPageSize())
+      slotCount--;
+    return slotCount;
+  }
+
+  /**
+   * @param slotCount number of slots of a data page
+   * @return size in bytes of the bitmap, rounded up to whole 64-bit words
+   */
+  static int getBitmapSize(int slotCount)
+  {
+    return (slotCount + Long.SIZE - 1)/Long.SIZE*Long.BYTES;
   }
 
   ArrayList<String> getTypes_col() {
@@ -46,4 +85,41 @@ class RelDef implements Serializable {
   int getSlotCount() {
     return slotCount;
   }
+
+  RowLayout getLayout() {
+    if(layout == null)
+      layout = new RowLayout(types_col);
+    return layout;
+  }
+
+  boolean isBitmapSlots() {
+    return bitmapSlots;
+  }
+
+  boolean isSlottedPages() {
+    return slottedPages;
+  }
+
+  /**
+   * @return slotted layout of the data pages, null if the relation has fixed slots
+   */
+  SlottedPage getSlottedPage() {
+    if(slottedPages && slottedPage == null)
+      slottedPage = new SlottedPage(getLayout());
+    return slottedPage;
+  }
+
+  /**
+   * @return room a data page needs to be sure a record fits in it, in slots or in bytes for a slotted page
+   */
+  int getMinimumRoom() {
+    return slottedPages ? getSlottedPage().getMaxRecordSize() + SlottedPage.slotSize : 1;
+  }
+
+  /**
+   * @return size in bytes of the slot map at the beginning of a data page, the records being written after it
+   */
+  int getSlotMapSize() {
+    return bitmapSlots ? getBitmapSize(slotCount) : slotCount;
+  }
 }
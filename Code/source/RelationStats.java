@@ -0,0 +1,173 @@
+package source;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Buffer pool and disk access statistics of a single relation file
+ */
+public class RelationStats implements RelationStatsMBean {
+    private final int fileIdx;
+    private LongAdder hitCount = new LongAdder();
+    private LongAdder missCount = new LongAdder();
+    private LongAdder evictionCount = new LongAdder();
+    private LongAdder dirtyWriteBackCount = new LongAdder();
+    private LongAdder unpinCount = new LongAdder();
+    private LongAdder flushedPageCount = new LongAdder();
+    private LongAdder pagesAdded = new LongAdder();
+    private LongAdder backgroundWriteCount = new LongAdder();
+    private LongAdder prefetchCount = new LongAdder();
+    private LatencyHistogram readLatency = new LatencyHistogram();
+    private LatencyHistogram writeLatency = new LatencyHistogram();
+
+    RelationStats(int fileIdx)
+    {
+        this.fileIdx = fileIdx;
+    }
+
+    void hit() {
+        hitCount.increment();
+    }
+
+    void miss() {
+        missCount.increment();
+    }
+
+    void eviction() {
+        evictionCount.increment();
+    }
+
+    void dirtyWriteBack() {
+        dirtyWriteBackCount.increment();
+    }
+
+    void unpin() {
+        unpinCount.increment();
+    }
+
+    void flushedPage() {
+        flushedPageCount.increment();
+    }
+
+    void pageAdded() {
+        pagesAdded.increment();
+    }
+
+    void backgroundWrite() {
+        backgroundWriteCount.increment();
+    }
+
+    void prefetch() {
+        prefetchCount.increment();
+    }
+
+    void pageRead(long nanos) {
+        readLatency.record(nanos);
+    }
+
+    void pageWritten(long nanos) {
+        writeLatency.record(nanos);
+    }
+
+    @Override
+    public int getFileIdx() {
+        return fileIdx;
+    }
+
+    @Override
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hits = hitCount.sum();
+        long requests = hits + missCount.sum();
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    @Override
+    public long getDirtyWriteBackCount() {
+        return dirtyWriteBackCount.sum();
+    }
+
+    @Override
+    public long getUnpinCount() {
+        return unpinCount.sum();
+    }
+
+    @Override
+    public long getFlushedPageCount() {
+        return flushedPageCount.sum();
+    }
+
+    @Override
+    public long getPagesRead() {
+        return readLatency.getCount();
+    }
+
+    @Override
+    public long getPagesWritten() {
+        return writeLatency.getCount();
+    }
+
+    @Override
+    public long getPagesAdded() {
+        return pagesAdded.sum();
+    }
+
+    @Override
+    public long getBackgroundWriteCount() {
+        return backgroundWriteCount.sum();
+    }
+
+    @Override
+    public long getPrefetchCount() {
+        return prefetchCount.sum();
+    }
+
+    @Override
+    public double getMeanReadMicros() {
+        return readLatency.getMeanMicros();
+    }
+
+    @Override
+    public double getP99ReadMicros() {
+        return readLatency.getPercentileMicros(99);
+    }
+
+    @Override
+    public double getMeanWriteMicros() {
+        return writeLatency.getMeanMicros();
+    }
+
+    @Override
+    public double getP99WriteMicros() {
+        return writeLatency.getPercentileMicros(99);
+    }
+
+    @Override
+    public void reset()
+    {
+        hitCount.reset();
+        missCount.reset();
+        evictionCount.reset();
+        dirtyWriteBackCount.reset();
+        unpinCount.reset();
+        flushedPageCount.reset();
+        pagesAdded.reset();
+        backgroundWriteCount.reset();
+        prefetchCount.reset();
+        readLatency.reset();
+        writeLatency.reset();
+    }
+}
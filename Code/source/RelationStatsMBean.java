@@ -0,0 +1,25 @@
+package source;
+
+/**
+ * JMX view of the buffer pool and disk access statistics of a relation file
+ */
+public interface RelationStatsMBean {
+    int getFileIdx();
+    long getHitCount();
+    long getMissCount();
+    double getHitRatio();
+    long getEvictionCount();
+    long getDirtyWriteBackCount();
+    long getUnpinCount();
+    long getFlushedPageCount();
+    long getPagesRead();
+    long getPagesWritten();
+    long getPagesAdded();
+    long getBackgroundWriteCount();
+    long getPrefetchCount();
+    double getMeanReadMicros();
+    double getP99ReadMicros();
+    double getMeanWriteMicros();
+    double getP99WriteMicros();
+    void reset();
+}
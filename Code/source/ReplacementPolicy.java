@@ -0,0 +1,69 @@
+package source;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Page replacement policy used by the buffer manager to choose which frame gets a new page when the pool is full
+ */
+interface ReplacementPolicy {
+
+    /**
+     * Notify the policy that a page has just been loaded into a frame
+     * @param frame frame holding the new page
+     */
+    void pageLoaded(Frame frame);
+
+    /**
+     * Notify the policy that a page already in a frame has been requested again
+     * @param frame frame holding the page
+     */
+    void pageAccessed(Frame frame);
+
+    /**
+     * Notify the policy that a frame isn't used by the upper layers anymore (pin count back to 0)
+     * @param frame unpinned frame
+     */
+    void pageUnpinned(Frame frame);
+
+    /**
+     * Notify the policy that the page of a frame has been evicted without asking it, the frame being reused by the
+     * ring of a bulk read
+     * @param frame reused frame
+     */
+    void frameRemoved(Frame frame);
+
+    /**
+     * Choose the frame whose page will be evicted, a pinned frame is never chosen
+     * @param frames    every frame of the pool, all of them holding a page
+     * @return index of the chosen frame, -1 if every frame is pinned
+     */
+    int chooseVictim(ArrayList<Frame> frames);
+
+    /**
+     * Undo the last call to chooseVictim, the buffer manager keeping the page of the chosen frame because it has to
+     * wait for the background writer first
+     * @param frame frame returned by the last call to chooseVictim
+     */
+    void victimRejected(Frame frame);
+
+    /**
+     * Order the frames holding a page from the one this policy would evict last to the one it would evict first, used
+     * to choose the pages kept when the pool shrinks
+     * @param frames    frames of the pool holding a page, the index of each one being its slot index
+     * @return the same frames, the ones to keep first
+     */
+    ArrayList<Frame> retentionOrder(List<Frame> frames);
+
+    /**
+     * Forget every page, called when the pool is emptied or resized
+     */
+    void reset();
+
+    String getName();
+
+    /**
+     * @return number of pages evicted by this policy since the start
+     */
+    long getEvictionCount();
+}
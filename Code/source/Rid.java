@@ -21,6 +21,20 @@ public class Rid implements Comparable<Rid> {
         return slotIdx;
     }
 
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (!(obj instanceof Rid)) return false;
+        Rid rid2 = (Rid) obj;
+        return this.pageId.equals(rid2.pageId) && this.slotIdx == rid2.slotIdx;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 31 * pageId.hashCode() + slotIdx;
+    }
+
     @Override
     public int compareTo(Rid o) {
         return this.pageId.getPageIdx() - ((Rid) o).pageId.getPageIdx();
@@ -0,0 +1,246 @@
+package source;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * Compiled layout of the records of a relation : kind of each column with its position and size in a record, the
+ * type names being read once instead of for every value. Values are encoded the same way in a record and in a data
+ * page, ints and floats with 4 bytes, stringx with x*2 bytes, the unused characters being at 0.
+ */
+class RowLayout {
+    //kinds of columns
+    static final int intColumn = 0;
+    static final int floatColumn = 1;
+    static final int stringColumn = 2;
+    private int[] kinds;
+    //position of each column in a record
+    private int[] offsets;
+    //size in bytes of each column
+    private int[] sizes;
+    private int recordSize = 0;
+
+    RowLayout(ArrayList<String> types)
+    {
+        int columnCount = types.size();
+        kinds = new int[columnCount];
+        offsets = new int[columnCount];
+        sizes = new int[columnCount];
+        for(int i = 0; i < columnCount; i++)
+        {
+            String type = types.get(i);
+            if(type.equals("int") || type.equals("float"))
+            {
+                kinds[i] = type.equals("int") ? intColumn : floatColumn;
+                sizes[i] = Constants.getIntSize();
+            }
+            else
+            {
+                kinds[i] = stringColumn;
+                //string : stored with x*2 bytes  when x is the number of character of the string type (stringx)
+                if(type.startsWith("string"))
+                    sizes[i] = Integer.parseInt(type.substring(6))*2;
+            }
+            offsets[i] = recordSize;
+            recordSize += sizes[i];
+        }
+    }
+
+    /**
+     * Layout of the tuples of a join, the columns of the 1st relation being followed by those of the 2nd one
+     * @param first     layout of the 1st relation
+     * @param second    layout of the 2nd relation
+     */
+    RowLayout(RowLayout first, RowLayout second)
+    {
+        int columnCount = first.getColumnCount() + second.getColumnCount();
+        kinds = new int[columnCount];
+        offsets = new int[columnCount];
+        sizes = new int[columnCount];
+        for(int i = 0; i < columnCount; i++)
+        {
+            RowLayout layout = i < first.getColumnCount() ? first : second;
+            int col = i < first.getColumnCount() ? i : i - first.getColumnCount();
+            kinds[i] = layout.kinds[col];
+            sizes[i] = layout.sizes[col];
+            offsets[i] = recordSize;
+            recordSize += sizes[i];
+        }
+    }
+
+    int getColumnCount() {
+        return kinds.length;
+    }
+
+    int getKind(int col) {
+        return kinds[col];
+    }
+
+    int getOffset(int col) {
+        return offsets[col];
+    }
+
+    int getSize(int col) {
+        return sizes[col];
+    }
+
+    /**
+     * @param col   column index
+     * @return number of characters of a string column
+     */
+    int getLength(int col) {
+        return sizes[col]/2;
+    }
+
+    int getRecordSize() {
+        return recordSize;
+    }
+
+    /**
+     * Encode a value given as text in its column, a string longer than its column being truncated
+     * @param buffer    buffer holding the record
+     * @param position  position of the record in the buffer
+     * @param col       column index
+     * @param value     value as text
+     */
+    void writeValue(ByteBuffer buffer, int position, int col, String value)
+    {
+        position += offsets[col];
+        switch(kinds[col])
+        {
+            case intColumn:
+                buffer.putInt(position, Integer.parseInt(value));
+                break;
+            case floatColumn:
+                buffer.putFloat(position, Float.parseFloat(value));
+                break;
+            default:
+                int length = Math.min(value.length(), getLength(col));
+                for(int h = 0; h < getLength(col); h++)
+                    buffer.putChar(position + h*2, h < length ? value.charAt(h) : 0);
+                break;
+        }
+    }
+
+    /**
+     * Decode a value as it's displayed
+     * @param buffer    buffer holding the record
+     * @param position  position of the record in the buffer
+     * @param col       column index
+     * @return value as text
+     */
+    String readText(ByteBuffer buffer, int position, int col)
+    {
+        position += offsets[col];
+        switch(kinds[col])
+        {
+            case intColumn:
+                return String.valueOf(buffer.getInt(position));
+            case floatColumn:
+                return String.valueOf(buffer.getFloat(position));
+            default:
+                //every character of the column is part of the string, the unused ones included
+                char[] characters = new char[getLength(col)];
+                for(int h = 0; h < characters.length; h++)
+                    characters[h] = buffer.getChar(position + h*2);
+                return new String(characters);
+        }
+    }
+
+    /**
+     * Hash a value from its bytes, two values equal for valuesEqual having the same hash when their columns are of
+     * the same kind
+     * @param buffer    buffer holding the record
+     * @param position  position of the record in the buffer
+     * @param col       column index
+     * @return hash of the value
+     */
+    int hashValue(ByteBuffer buffer, int position, int col)
+    {
+        position += offsets[col];
+        switch(kinds[col])
+        {
+            case intColumn:
+                return buffer.getInt(position);
+            case floatColumn:
+                return Float.floatToIntBits(buffer.getFloat(position));
+            default:
+                int hash = 0;
+                for(int h = 0; h < sizes[col]; h += 2)
+                    hash = 31*hash + buffer.getChar(position + h);
+                return hash;
+        }
+    }
+
+    /**
+     * Compare the values of two columns, equal when they're displayed the same way
+     * @param buffer        buffer holding the 1st record
+     * @param position      position of the 1st record
+     * @param col           column of the 1st record
+     * @param layout2       layout of the 2nd record
+     * @param buffer2       buffer holding the 2nd record
+     * @param position2     position of the 2nd record
+     * @param col2          column of the 2nd record
+     * @return true if the values are equal
+     */
+    boolean valuesEqual(ByteBuffer buffer, int position, int col, RowLayout layout2, ByteBuffer buffer2, int position2, int col2)
+    {
+        //values of different kinds can only be compared as text
+        if(kinds[col] != layout2.kinds[col2])
+            return readText(buffer, position, col).equals(layout2.readText(buffer2, position2, col2));
+        position += offsets[col];
+        position2 += layout2.offsets[col2];
+        switch(kinds[col])
+        {
+            case intColumn:
+                return buffer.getInt(position) == buffer2.getInt(position2);
+            case floatColumn:
+                return Float.floatToIntBits(buffer.getFloat(position)) == Float.floatToIntBits(buffer2.getFloat(position2));
+            default:
+                if(sizes[col] != layout2.sizes[col2])
+                    return false;
+                for(int h = 0; h < sizes[col]; h += 2)
+                {
+                    if(buffer.getChar(position + h) != buffer2.getChar(position2 + h))
+                        return false;
+                }
+                return true;
+        }
+    }
+
+    /**
+     * Order the values of two columns, consistently with valuesEqual : ints and floats by value, strings by their
+     * characters, the unused ones included, and values of different kinds by their text
+     * @param buffer        buffer holding the 1st record
+     * @param position      position of the 1st record
+     * @param col           column of the 1st record
+     * @param layout2       layout of the 2nd record
+     * @param buffer2       buffer holding the 2nd record
+     * @param position2     position of the 2nd record
+     * @param col2          column of the 2nd record
+     * @return negative, 0 or positive if the 1st value is lower, equal or greater
+     */
+    int compareValues(ByteBuffer buffer, int position, int col, RowLayout layout2, ByteBuffer buffer2, int position2, int col2)
+    {
+        if(kinds[col] != layout2.kinds[col2])
+            return readText(buffer, position, col).compareTo(layout2.readText(buffer2, position2, col2));
+        position += offsets[col];
+        position2 += layout2.offsets[col2];
+        switch(kinds[col])
+        {
+            case intColumn:
+                return Integer.compare(buffer.getInt(position), buffer2.getInt(position2));
+            case floatColumn:
+                return Float.compare(buffer.getFloat(position), buffer2.getFloat(position2));
+            default:
+                for(int h = 0; h < Math.min(sizes[col], layout2.sizes[col2]); h += 2)
+                {
+                    int comparison = Character.compare(buffer.getChar(position + h), buffer2.getChar(position2 + h));
+                    if(comparison != 0)
+                        return comparison;
+                }
+                //a string of a shorter column is lower than the strings of a longer one starting with it
+                return Integer.compare(sizes[col], layout2.sizes[col2]);
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package source;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Slotted layout of the data pages of a relation created with the "slotted" option : records of variable length are
+ * written from the end of the page towards its beginning, and found through a slot array following a small header.
+ * <ul>
+ *     <li>header : number of slots, position of the first record, number of bytes used by the records (2 bytes each)</li>
+ *     <li>slot array : position and length of each record (2 bytes each), a slot at position 0 being free</li>
+ * </ul>
+ * A string only takes its characters, the unused ones at the end of its column being dropped : 1 byte per character
+ * if they're all Latin-1, else 1 to 3 bytes per character in UTF-8, after its length in bytes (1 byte, or 2 for the
+ * long columns, the highest bit marking UTF-8). Ints and floats take 4 bytes.
+ * Records are decoded into the fixed layout of the relation, a slot number being used as the position of the record
+ * in its Rid. A zeroed page is an empty page.
+ */
+class SlottedPage {
+    static final int headerSize = 6;
+    static final int slotSize = 4;
+    //the length of a string written in UTF-8 has this bit set
+    private static final int utf8Flag = 0x80;
+    private RowLayout layout;
+    //number of bytes of the length of each string column, 0 for the other columns
+    private int[] lengthSizes;
+    private int maxRecordSize = 0;
+    private int minRecordSize = 0;
+
+    SlottedPage(RowLayout layout)
+    {
+        this.layout = layout;
+        lengthSizes = new int[layout.getColumnCount()];
+        for(int col = 0; col < layout.getColumnCount(); col++)
+        {
+            if(layout.getKind(col) == RowLayout.stringColumn)
+            {
+                //a character takes up to 3 bytes, the length fits in 7 bits for short columns
+                lengthSizes[col] = layout.getLength(col)*3 < utf8Flag ? 1 : 2;
+                maxRecordSize += lengthSizes[col] + layout.getLength(col)*3;
+                minRecordSize += lengthSizes[col];
+            }
+            else
+            {
+                maxRecordSize += layout.getSize(col);
+                minRecordSize += layout.getSize(col);
+            }
+        }
+    }
+
+    /**
+     * @return number of bytes of an empty page available for the records and their slots
+     */
+    static int getCapacity()
+    {
+        return Constants.getPageSize() - headerSize;
+    }
+
+    /**
+     * @return size of the longest record, every character of its strings taking 3 bytes
+     */
+    int getMaxRecordSize()
+    {
+        return maxRecordSize;
+    }
+
+    /**
+     * @return size of the shortest record, every string being empty
+     */
+    int getMinRecordSize()
+    {
+        return minRecordSize;
+    }
+
+    int getSlotCount(ByteBuffer page)
+    {
+        return page.getChar(0);
+    }
+
+    /**
+     * @param page  buffer of the data page
+     * @param slot  slot number
+     * @return true if the slot holds a record
+     */
+    boolean isUsed(ByteBuffer page, int slot)
+    {
+        return page.getChar(headerSize + slot*slotSize) != 0;
+    }
+
+    /**
+     * @param page  buffer of the data page
+     * @return number of bytes available for new records and their slots, once the page is compacted
+     */
+    int getAvailableSpace(ByteBuffer page)
+    {
+        return getCapacity() - getSlotCount(page)*slotSize - page.getChar(4);
+    }
+
+    /**
+     * Write a record in the page, in the first free slot
+     * @param page      buffer of the data page
+     * @param record    buffer holding the record in the fixed layout
+     * @param position  position of the record in its buffer
+     * @return slot number, -1 if there isn't enough room in the page
+     */
+    int insert(ByteBuffer page, ByteBuffer record, int position)
+    {
+        int size = getEncodedSize(record, position);
+        int slotCount = getSlotCount(page);
+        int slot = 0;
+        while(slot < slotCount && isUsed(page, slot))
+            slot++;
+        int newSlotCount = Math.max(slotCount, slot + 1);
+        if(getAvailableSpace(page) < size + (newSlotCount - slotCount)*slotSize)
+            return -1;
+        //the space of the deleted records is reclaimed only when it's needed
+        if(getRecordsStart(page) - size < headerSize + newSlotCount*slotSize)
+            compact(page);
+        int recordStart = getRecordsStart(page) - size;
+        encode(record, position, page, recordStart);
+        page.putChar(headerSize + slot*slotSize, (char) recordStart);
+        page.putChar(headerSize + slot*slotSize + 2, (char) size);
+        page.putChar(0, (char) newSlotCount);
+        page.putChar(2, (char) recordStart);
+        page.putChar(4, (char) (page.getChar(4) + size));
+        return slot;
+    }
+
+    /**
+     * Free the slot of a record, the free slots at the end of the array being removed
+     * @param page  buffer of the data page
+     * @param slot  slot number
+     */
+    void delete(ByteBuffer page, int slot)
+    {
+        int size = page.getChar(headerSize + slot*slotSize + 2);
+        page.putInt(headerSize + slot*slotSize, 0);
+        page.putChar(4, (char) (page.getChar(4) - size));
+        int slotCount = getSlotCount(page);
+        while(slotCount > 0 && !isUsed(page, slotCount - 1))
+            slotCount--;
+        page.putChar(0, (char) slotCount);
+        if(slotCount == 0)
+            page.putChar(2, (char) 0);
+    }
+
+    /**
+     * Decode a record into the fixed layout of the relation
+     * @param page      buffer of the data page
+     * @param slot      slot number
+     * @param record    buffer receiving the record
+     * @param position  position of the record in its buffer
+     */
+    void decode(ByteBuffer page, int slot, ByteBuffer record, int position)
+    {
+        int source = page.getChar(headerSize + slot*slotSize);
+        for(int col = 0; col < layout.getColumnCount(); col++)
+        {
+            int target = position + layout.getOffset(col);
+            if(lengthSizes[col] == 0)
+            {
+                record.putInt(target, page.getInt(source));
+                source += layout.getSize(col);
+                continue;
+            }
+            int length = lengthSizes[col] == 1 ? page.get(source) & 0xFF : page.getChar(source);
+            int flag = lengthSizes[col] == 1 ? utf8Flag : utf8Flag << 8;
+            source += lengthSizes[col];
+            boolean utf8 = (length & flag) != 0;
+            int end = source + (length & ~flag);
+            int h = 0;
+            while(source < end)
+            {
+                int b = page.get(source++) & 0xFF;
+                //a Latin-1 byte or the first byte of an UTF-8 sequence of 1 to 3 bytes
+                if(utf8 && b >= 0xE0)
+                {
+                    b = (b & 0x0F) << 12 | (page.get(source) & 0x3F) << 6 | (page.get(source + 1) & 0x3F);
+                    source += 2;
+                }
+                else if(utf8 && b >= 0xC0)
+                    b = (b & 0x1F) << 6 | (page.get(source++) & 0x3F);
+                record.putChar(target + h*2, (char) b);
+                h++;
+            }
+            //the characters dropped from the end of the column are at 0
+            for(; h < layout.getLength(col); h++)
+                record.putChar(target + h*2, (char) 0);
+        }
+    }
+
+    /**
+     * @return position of the record written last, the records being written from the end of the page
+     */
+    private int getRecordsStart(ByteBuffer page)
+    {
+        int recordsStart = page.getChar(2);
+        return recordsStart == 0 ? Constants.getPageSize() : recordsStart;
+    }
+
+    /**
+     * Move the records to the end of the page, so that the space of the deleted ones is contiguous
+     * @param page  buffer of the data page
+     */
+    private void compact(ByteBuffer page)
+    {
+        byte[] copy = new byte[Constants.getPageSize()];
+        page.get(0, copy);
+        int recordStart = Constants.getPageSize();
+        for(int slot = 0; slot < getSlotCount(page); slot++)
+        {
+            if(isUsed(page, slot))
+            {
+                int size = page.getChar(headerSize + slot*slotSize + 2);
+                recordStart -= size;
+                page.put(recordStart, copy, page.getChar(headerSize + slot*slotSize), size);
+                page.putChar(headerSize + slot*slotSize, (char) recordStart);
+            }
+        }
+        page.putChar(2, (char) (recordStart == Constants.getPageSize() ? 0 : recordStart));
+    }
+
+    /**
+     * @return number of characters of a string, the unused ones at the end of its column being ignored
+     */
+    private int getStringLength(ByteBuffer record, int position, int col)
+    {
+        int length = layout.getLength(col);
+        while(length > 0 && record.getChar(position + layout.getOffset(col) + (length - 1)*2) == 0)
+            length--;
+        return length;
+    }
+
+    /**
+     * @return true if every character of a string is Latin-1
+     */
+    private boolean isLatin1(ByteBuffer record, int position, int col, int length)
+    {
+        for(int h = 0; h < length; h++)
+        {
+            if(record.getChar(position + layout.getOffset(col) + h*2) > 0xFF)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return number of bytes of a record once encoded
+     */
+    private int getEncodedSize(ByteBuffer record, int position)
+    {
+        int size = 0;
+        for(int col = 0; col < layout.getColumnCount(); col++)
+        {
+            if(lengthSizes[col] == 0)
+            {
+                size += layout.getSize(col);
+                continue;
+            }
+            int length = getStringLength(record, position, col);
+            size += lengthSizes[col];
+            if(isLatin1(record, position, col, length))
+                size += length;
+            else
+            {
+                for(int h = 0; h < length; h++)
+                {
+                    char c = record.getChar(position + layout.getOffset(col) + h*2);
+                    size += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Encode a record given in the fixed layout
+     * @param record        buffer holding the record
+     * @param position      position of the record in its buffer
+     * @param page          buffer of the data page
+     * @param target        position of the encoded record in the page
+     */
+    private void encode(ByteBuffer record, int position, ByteBuffer page, int target)
+    {
+        for(int col = 0; col < layout.getColumnCount(); col++)
+        {
+            int source = position + layout.getOffset(col);
+            if(lengthSizes[col] == 0)
+            {
+                page.putInt(target, record.getInt(source));
+                target += layout.getSize(col);
+                continue;
+            }
+            int length = getStringLength(record, position, col);
+            boolean utf8 = !isLatin1(record, position, col, length);
+            int lengthPosition = target;
+            target += lengthSizes[col];
+            for(int h = 0; h < length; h++)
+            {
+                char c = record.getChar(source + h*2);
+                //surrogates are written one by one, like the other characters
+                if(!utf8 || c < 0x80)
+                    page.put(target++, (byte) c);
+                else if(c < 0x800)
+                {
+                    page.put(target++, (byte) (0xC0 | c >> 6));
+                    page.put(target++, (byte) (0x80 | c & 0x3F));
+                }
+                else
+                {
+                    page.put(target++, (byte) (0xE0 | c >> 12));
+                    page.put(target++, (byte) (0x80 | c >> 6 & 0x3F));
+                    page.put(target++, (byte) (0x80 | c & 0x3F));
+                }
+            }
+            int encodedLength = target - lengthPosition - lengthSizes[col];
+            if(lengthSizes[col] == 1)
+                page.put(lengthPosition, (byte) (utf8 ? encodedLength | utf8Flag : encodedLength));
+            else
+                page.putChar(lengthPosition, (char) (utf8 ? encodedLength | utf8Flag << 8 : encodedLength));
+        }
+    }
+}
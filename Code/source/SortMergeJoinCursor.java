@@ -0,0 +1,143 @@
+package source;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * Sort-merge equi-join : both relations are read in the order of their join column, sorted by an external merge sort
+ * or read through an index on this column, then merged. The tuples are returned sorted on the join column, the
+ * records of the 2nd relation sharing a value being kept in memory while the records of the 1st one with this value
+ * are joined.
+ */
+class SortMergeJoinCursor implements RecordCursor {
+    private HeapFile heapFile1;
+    private HeapFile heapFile2;
+    private int colIdx;
+    private int colIdx2;
+    //indexes giving the records of each relation in order, null to sort the relation
+    private Index index1;
+    private Index index2;
+    //values of columns of different kinds are compared, and sorted, as they're displayed
+    private boolean textKeys;
+    private RowLayout joinLayout;
+    private RecordCursor cursorRel1 = null;
+    private RecordCursor cursorRel2 = null;
+    private Record recordRel1 = null;
+    //next record of the 2nd relation greater than the current value
+    private Record recordRel2 = null;
+    //records of the 2nd relation equal to the current record of the 1st one
+    private ArrayList<Record> group = new ArrayList<>();
+    private int positionInGroup = 0;
+
+    /**
+     * @param heapFile1 1st relation
+     * @param heapFile2 2nd relation
+     * @param colIdx    join column of the 1st relation
+     * @param colIdx2   join column of the 2nd relation
+     * @param index1    index on the join column of the 1st relation, null if it has to be sorted
+     * @param index2    index on the join column of the 2nd relation, null if it has to be sorted
+     */
+    SortMergeJoinCursor(HeapFile heapFile1, HeapFile heapFile2, int colIdx, int colIdx2, Index index1, Index index2)
+    {
+        this.heapFile1 = heapFile1;
+        this.heapFile2 = heapFile2;
+        this.colIdx = colIdx;
+        this.colIdx2 = colIdx2;
+        this.index1 = index1;
+        this.index2 = index2;
+        this.textKeys = heapFile1.getReldef().getLayout().getKind(colIdx) != heapFile2.getReldef().getLayout().getKind(colIdx2);
+        this.joinLayout = new RowLayout(heapFile1.getReldef().getLayout(), heapFile2.getReldef().getLayout());
+    }
+
+    @Override
+    public Record next()
+    {
+        //both relations are sorted at the first call
+        if(cursorRel1 == null)
+        {
+            cursorRel1 = openSortedCursor(heapFile1, colIdx, index1);
+            cursorRel2 = openSortedCursor(heapFile2, colIdx2, index2);
+            recordRel2 = cursorRel2.next();
+        }
+        while(true)
+        {
+            if(recordRel1 != null && positionInGroup < group.size())
+                return recordRel1.concat(group.get(positionInGroup++), joinLayout);
+            if((recordRel1 = cursorRel1.next()) == null)
+            {
+                close();
+                return null;
+            }
+            positionInGroup = 0;
+            //the next records of the 1st relation with the same value are joined to the same group
+            if(!group.isEmpty() && recordRel1.compareValue(colIdx, group.get(0), colIdx2, textKeys) == 0)
+                continue;
+            group.clear();
+            while(recordRel2 != null && recordRel1.compareValue(colIdx, recordRel2, colIdx2, textKeys) > 0)
+                recordRel2 = cursorRel2.next();
+            while(recordRel2 != null && recordRel1.compareValue(colIdx, recordRel2, colIdx2, textKeys) == 0)
+            {
+                group.add(recordRel2.copy());
+                recordRel2 = cursorRel2.next();
+            }
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        if(cursorRel1 != null)
+        {
+            cursorRel1.close();
+            cursorRel2.close();
+        }
+        group.clear();
+        recordRel1 = null;
+        recordRel2 = null;
+    }
+
+    /**
+     * Open a cursor reading a relation in the order of its join column
+     * @param heapFile  relation
+     * @param colIdx    join column
+     * @param index     index on the join column, null to sort the relation
+     * @return cursor over the records of the relation, sorted on the join column
+     */
+    private RecordCursor openSortedCursor(HeapFile heapFile, int colIdx, Index index)
+    {
+        if(index == null)
+            return new ExternalSorter(heapFile.getReldef().getLayout(), colIdx, textKeys).sort(heapFile.openCursor());
+        ArrayList<DataEntry> dataEntries = index.getTree().getDataEntries();
+        return new RecordCursor() {
+            private int entryPosition = 0;
+            //records of the key being read
+            private ArrayList<Record> records = new ArrayList<>();
+            private int position = 0;
+            private int key;
+
+            @Override
+            public Record next()
+            {
+                while(true)
+                {
+                    while(position == records.size())
+                    {
+                        if(entryPosition == dataEntries.size())
+                            return null;
+                        //the records of a key are read page by page
+                        DataEntry dataEntry = dataEntries.get(entryPosition++);
+                        ArrayList<Rid> rids = new ArrayList<>(dataEntry.getRids());
+                        Collections.sort(rids);
+                        records = heapFile.getAllRecordsFromRids(rids);
+                        position = 0;
+                        key = dataEntry.getKey();
+                    }
+                    //a rid whose slot has been given to another record would break the order of the records
+                    Record record = records.get(position++);
+                    if(record.getInt(colIdx) == key)
+                        return record;
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,90 @@
+package source;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Temporary file holding records of the same layout one after another, used by the operators whose data doesn't fit
+ * in memory. Its pages are written and read straight through the disk manager, outside of the buffer pool.
+ */
+class SpillFile {
+    private RowLayout layout;
+    private int fileIdx;
+    private int recordsPerPage;
+    //page being filled, written at the end of the file once full
+    private ByteBuffer page;
+    private int recordsInPage = 0;
+    private long recordCount = 0;
+
+    SpillFile(RowLayout layout)
+    {
+        this.layout = layout;
+        this.fileIdx = DiskManager.getInstance().createTemporaryFile();
+        this.recordsPerPage = Constants.getPageSize() / layout.getRecordSize();
+        this.page = ByteBuffer.allocate(Constants.getPageSize());
+    }
+
+    /**
+     * Write a record after the previous ones
+     * @param record    record, its values being copied
+     */
+    void write(Record record)
+    {
+        record.writeToBuffer(page, recordsInPage * layout.getRecordSize());
+        recordsInPage++;
+        recordCount++;
+        if(recordsInPage == recordsPerPage)
+        {
+            DiskManager.getInstance().addPage(fileIdx, page);
+            recordsInPage = 0;
+        }
+    }
+
+    long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Open a cursor reading the records in the order they were written, nothing can be written afterwards
+     * @return cursor, the records being returned as a single view valid until the next call
+     */
+    RecordCursor openCursor()
+    {
+        //the last page is partially filled
+        if(recordsInPage > 0)
+        {
+            DiskManager.getInstance().addPage(fileIdx, page);
+            recordsInPage = 0;
+        }
+        return new RecordCursor() {
+            private ByteBuffer buffer = ByteBuffer.allocate(Constants.getPageSize());
+            private RecordView view = new RecordView(layout);
+            private int pageIdx = -1;
+            private int positionInPage = recordsPerPage;
+            private long remaining = recordCount;
+
+            @Override
+            public Record next()
+            {
+                if(remaining == 0)
+                    return null;
+                if(positionInPage == recordsPerPage)
+                {
+                    DiskManager.getInstance().readPage(new PageId(fileIdx, ++pageIdx), buffer);
+                    positionInPage = 0;
+                }
+                view.moveTo(buffer, positionInPage * layout.getRecordSize(), null, 0);
+                positionInPage++;
+                remaining--;
+                return view;
+            }
+        };
+    }
+
+    /**
+     * Delete the file, once its records aren't needed anymore
+     */
+    void delete()
+    {
+        DiskManager.getInstance().deleteTemporaryFile(fileIdx);
+    }
+}
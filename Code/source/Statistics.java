@@ -0,0 +1,207 @@
+package source;
+
+import java.lang.management.ManagementFactory;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Class that gathers the buffer pool and disk access statistics of every relation file, displayed with the "stats"
+ * command and published as JMX MBeans
+ */
+public class Statistics implements StatisticsMBean {
+    private static Statistics instance = new Statistics();
+    //statistics of each relation file, read without locking by every page access
+    private ConcurrentHashMap<Integer, RelationStats> relationStats = new ConcurrentHashMap<>();
+    private MBeanServer server = null;
+
+    private Statistics() {
+    }
+
+    static Statistics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Get the statistics of a relation file, create and publish them the first time
+     * @param fileIdx   file index
+     * @return statistics of the file
+     */
+    RelationStats get(int fileIdx)
+    {
+        RelationStats stats = relationStats.get(fileIdx);
+        return stats != null ? stats : create(fileIdx);
+    }
+
+    /**
+     * Create and publish the statistics of a relation file, unless another thread just did it
+     * @param fileIdx   file index
+     * @return statistics of the file
+     */
+    private synchronized RelationStats create(int fileIdx)
+    {
+        RelationStats stats = relationStats.get(fileIdx);
+        if(stats == null)
+        {
+            stats = new RelationStats(fileIdx);
+            relationStats.put(fileIdx, stats);
+            register(stats, "source:type=RelationStats,fileIdx=" + fileIdx);
+        }
+        return stats;
+    }
+
+    /**
+     * Forget the statistics of a file, used when a temporary file is deleted
+     * @param fileIdx   file index
+     */
+    synchronized void remove(int fileIdx)
+    {
+        if(relationStats.remove(fileIdx) != null)
+            unregister(fileIdx);
+    }
+
+    /**
+     * Forget the statistics of every relation file, used when the database is cleaned
+     */
+    synchronized void clear()
+    {
+        for(Integer fileIdx : relationStats.keySet())
+            unregister(fileIdx);
+        relationStats.clear();
+    }
+
+    /**
+     * Remove the MBean of the statistics of a file from the platform MBean server
+     * @param fileIdx   file index
+     */
+    private void unregister(int fileIdx)
+    {
+        try
+        {
+            if(server != null)
+                server.unregisterMBean(new ObjectName("source:type=RelationStats,fileIdx=" + fileIdx));
+        }catch(JMException jm)
+        {
+            System.out.println("Statistiques JMX non retirees : " + jm.getMessage());
+        }
+    }
+
+    /**
+     * Publish a MBean on the platform MBean server, the global statistics being published along with the first one
+     * @param mbean mbean
+     * @param name  object name of the mbean
+     */
+    private void register(Object mbean, String name)
+    {
+        try
+        {
+            if(server == null)
+            {
+                server = ManagementFactory.getPlatformMBeanServer();
+                server.registerMBean(this, new ObjectName("source:type=Statistics"));
+            }
+            server.registerMBean(mbean, new ObjectName(name));
+        }catch(JMException jm)
+        {
+            System.out.println("Statistiques JMX non publiees : " + jm.getMessage());
+        }
+    }
+
+    /**
+     * Display the statistics of the buffer pool and of each relation file on the console
+     */
+    synchronized void display()
+    {
+        System.out.println();
+        System.out.println("Buffer : " + getFrameCount() + " frames, politique " + getReplacementPolicy() + ", " + getPolicyEvictionCount() + " remplacements");
+        System.out.println(String.format("Hit ratio global : %.3f (%d hits, %d miss)", getHitRatio(), getHitCount(), getMissCount()));
+        for(RelationStats stats : new TreeMap<>(relationStats).values())
+        {
+            System.out.println();
+            System.out.println("Fichier " + stats.getFileIdx() + " (" + findRelName(stats.getFileIdx()) + ")");
+            System.out.println(String.format("  hit ratio %.3f : %d hits, %d miss, %d pages lues par anticipation, %d remplacements, %d ecritures de pages modifiees, %d liberations",
+                    stats.getHitRatio(), stats.getHitCount(), stats.getMissCount(), stats.getPrefetchCount(), stats.getEvictionCount(), stats.getDirtyWriteBackCount(), stats.getUnpinCount()));
+            System.out.println(String.format("  disque : %d pages lues (moy %.1f us, p99 %.1f us), %d pages ecrites (moy %.1f us, p99 %.1f us), %d pages ajoutees, %d pages sauvegardees au flush, %d en arriere-plan",
+                    stats.getPagesRead(), stats.getMeanReadMicros(), stats.getP99ReadMicros(), stats.getPagesWritten(), stats.getMeanWriteMicros(), stats.getP99WriteMicros(), stats.getPagesAdded(), stats.getFlushedPageCount(), stats.getBackgroundWriteCount()));
+        }
+        System.out.println();
+    }
+
+    /**
+     * find the name of the relation stored in a file
+     * @param fileIdx   file index
+     * @return relation name, "?" if no relation matches
+     */
+    private String findRelName(int fileIdx)
+    {
+        for(RelDef reldef : DBDef.getInstance().getRelDefs())
+        {
+            if(reldef.getFileIdx() == fileIdx)
+                return reldef.getRelName();
+        }
+        return "?";
+    }
+
+    @Override
+    public int getFrameCount() {
+        return Constants.getFrameCount();
+    }
+
+    @Override
+    public String getReplacementPolicy() {
+        return BufferManager.getInstance().getPolicy().getName();
+    }
+
+    @Override
+    public long getPolicyEvictionCount() {
+        return BufferManager.getInstance().getPolicy().getEvictionCount();
+    }
+
+    @Override
+    public synchronized long getHitCount() {
+        long hits = 0;
+        for(RelationStats stats : relationStats.values())
+            hits += stats.getHitCount();
+        return hits;
+    }
+
+    @Override
+    public synchronized long getMissCount() {
+        long misses = 0;
+        for(RelationStats stats : relationStats.values())
+            misses += stats.getMissCount();
+        return misses;
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hits = getHitCount();
+        long requests = hits + getMissCount();
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    @Override
+    public synchronized long getPagesRead() {
+        long pages = 0;
+        for(RelationStats stats : relationStats.values())
+            pages += stats.getPagesRead();
+        return pages;
+    }
+
+    @Override
+    public synchronized long getPagesWritten() {
+        long pages = 0;
+        for(RelationStats stats : relationStats.values())
+            pages += stats.getPagesWritten();
+        return pages;
+    }
+
+    @Override
+    public synchronized void reset()
+    {
+        for(RelationStats stats : relationStats.values())
+            stats.reset();
+    }
+}
@@ -0,0 +1,16 @@
+package source;
+
+/**
+ * JMX view of the statistics of the whole buffer pool
+ */
+public interface StatisticsMBean {
+    int getFrameCount();
+    String getReplacementPolicy();
+    long getPolicyEvictionCount();
+    long getHitCount();
+    long getMissCount();
+    double getHitRatio();
+    long getPagesRead();
+    long getPagesWritten();
+    void reset();
+}
@@ -1,6 +1,7 @@
 package source;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 
 /**
  * Class that contains the B+tree structure and how to make one from scratch
@@ -94,6 +95,53 @@ class Tree {
         }
         }
 
+    /**
+     * Remove the rid of a deleted record from the data entry of its key
+     * @param key   value of the indexed column of the record
+     * @param rid   rid of the record
+     */
+    void removeRid(int key, Rid rid)
+    {
+        ArrayList<Rid> rids = root.searchChild(key);
+        if(rids != null)
+            rids.remove(rid);
+    }
+
+    /**
+     * Update the rids of the leaves after a vacuum of the relation
+     * @param movedRids     new rid of each moved record, by its former rid
+     * @param pageCount     number of pages of the file after the vacuum
+     */
+    void moveRids(HashMap<Rid, Rid> movedRids, int pageCount)
+    {
+        for(Node node : nodes)
+        {
+            if(node instanceof Leaf)
+            {
+                for(Entry entry : node.getEntries())
+                    ((DataEntry) entry).moveRids(movedRids, pageCount);
+            }
+        }
+    }
+
+    /**
+     * Give the data entries of the leaves, the leaves being added to the nodes in the order of their keys
+     * @return data entries, sorted by key
+     */
+    ArrayList<DataEntry> getDataEntries()
+    {
+        ArrayList<DataEntry> dataEntries = new ArrayList<>();
+        for(Node node : nodes)
+        {
+            if(node instanceof Leaf)
+            {
+                for(Entry entry : node.getEntries())
+                    dataEntries.add((DataEntry) entry);
+            }
+        }
+        return dataEntries;
+    }
+
     private void addNode(Node node)
     {
         nodes.add(node);
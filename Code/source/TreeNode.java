@@ -25,6 +25,9 @@ public class TreeNode extends Node {
     @Override
     public ArrayList<Rid> searchChild(int key)
     {
+        //the root of a tree made of a single leaf doesn't have any key
+        if(entries.isEmpty())
+            return firstChildNode == null ? null : firstChildNode.searchChild(key);
         boolean found = false;
         int min = 0, max = entries.size()-1;
         int choice = 0;
@@ -0,0 +1,199 @@
+package source;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 2Q replacement policy, resistant to large scans : a page seen once only goes into a small FIFO queue (A1in), it
+ * only reaches the main LRU queue (Am) if it is requested again after its eviction, while its pageId is still
+ * remembered in the ghost queue (A1out). A scan therefore only recycles the A1in frames and keeps the hot pages.
+ */
+class TwoQueuePolicy implements ReplacementPolicy {
+    //frames holding pages seen once, oldest first
+    private LinkedHashSet<Integer> a1in = new LinkedHashSet<>();
+    //frames holding hot pages, least recently used first
+    private LinkedHashSet<Integer> am = new LinkedHashSet<>();
+    //pageIds recently evicted from A1in, oldest first
+    private LinkedHashSet<PageId> a1out = new LinkedHashSet<>();
+    //read by the JMX thread while the buffer manager counts the evictions
+    private LongAdder evictionCount = new LongAdder();
+    //queue the last victim has been taken from, and the pageId its eviction pushed out of A1out, kept until the
+    //next choice so that it can be undone
+    private LinkedHashSet<Integer> lastVictimQueue = null;
+    private PageId lastForgottenPageId = null;
+
+    @Override
+    public void pageLoaded(Frame frame)
+    {
+        if(a1out.remove(frame.getPageId()))
+            am.add(frame.getSlotIdx());
+        else
+            a1in.add(frame.getSlotIdx());
+    }
+
+    @Override
+    public void pageAccessed(Frame frame)
+    {
+        //only a page of the main queue moves, a page of A1in keeps its place in the FIFO queue
+        if(am.remove(frame.getSlotIdx()))
+            am.add(frame.getSlotIdx());
+    }
+
+    @Override
+    public void pageUnpinned(Frame frame) { }
+
+    @Override
+    public void frameRemoved(Frame frame)
+    {
+        if(!a1in.remove(frame.getSlotIdx()))
+            am.remove(frame.getSlotIdx());
+    }
+
+    /**
+     * Evict the oldest unpinned page of A1in if it holds more than a quarter of the pool, otherwise the least
+     * recently used unpinned page of Am, the other queue being used if no unpinned page is found
+     */
+    @Override
+    public int chooseVictim(ArrayList<Frame> frames)
+    {
+        int a1inMaxSize = Math.max(1, frames.size() / 4);
+        int victim;
+        if(a1in.size() > a1inMaxSize || am.isEmpty())
+        {
+            victim = pollUnpinned(a1in, frames);
+            if(victim == -1)
+                victim = pollUnpinned(am, frames);
+        }
+        else
+        {
+            victim = pollUnpinned(am, frames);
+            if(victim == -1)
+                victim = pollUnpinned(a1in, frames);
+        }
+        if(victim != -1)
+            evictionCount.increment();
+        return victim;
+    }
+
+    /**
+     * Remove and return the first unpinned frame of a queue, remember its page in A1out if it comes from A1in
+     * @param queue     A1in or Am
+     * @param frames    every frame of the pool
+     * @return index of the frame, -1 if every frame of the queue is pinned
+     */
+    private int pollUnpinned(LinkedHashSet<Integer> queue, ArrayList<Frame> frames)
+    {
+        Iterator<Integer> iterator = queue.iterator();
+        while(iterator.hasNext())
+        {
+            int frameIdx = iterator.next();
+            Frame frame = frames.get(frameIdx);
+            if(frame.getPinCount() == 0)
+            {
+                iterator.remove();
+                lastVictimQueue = queue;
+                lastForgottenPageId = null;
+                if(queue == a1in)
+                {
+                    a1out.add(frame.getPageId());
+                    //A1out remembers as many pages as half of the pool
+                    if(a1out.size() > Math.max(1, frames.size() / 2))
+                    {
+                        lastForgottenPageId = a1out.iterator().next();
+                        a1out.remove(lastForgottenPageId);
+                    }
+                }
+                return frameIdx;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Put the frame back at the head of the queue it has been taken from, it was its first unpinned frame, and give
+     * A1out back the state it had before the choice
+     */
+    @Override
+    public void victimRejected(Frame frame)
+    {
+        if(lastVictimQueue == null)
+            return;
+        if(lastVictimQueue == a1in)
+        {
+            a1out.remove(frame.getPageId());
+            if(lastForgottenPageId != null)
+                a1out = pushFront(a1out, lastForgottenPageId);
+            a1in = pushFront(a1in, frame.getSlotIdx());
+        }
+        else
+            am = pushFront(am, frame.getSlotIdx());
+        lastVictimQueue = null;
+        lastForgottenPageId = null;
+        evictionCount.decrement();
+    }
+
+    /**
+     * Build a queue starting with an element followed by every element of another queue, only used when a choice is
+     * undone since it copies the whole queue
+     * @param queue     queue
+     * @param first     element put at the head
+     * @return the new queue
+     */
+    private static <T> LinkedHashSet<T> pushFront(LinkedHashSet<T> queue, T first)
+    {
+        LinkedHashSet<T> newQueue = new LinkedHashSet<>(queue.size() * 2 + 1);
+        newQueue.add(first);
+        newQueue.addAll(queue);
+        return newQueue;
+    }
+
+    /**
+     * Keep the hot pages of Am first, most recently used first, then the pages of A1in, most recently loaded first
+     */
+    @Override
+    public ArrayList<Frame> retentionOrder(List<Frame> frames)
+    {
+        ArrayList<Frame> order = new ArrayList<>(frames.size());
+        for(LinkedHashSet<Integer> queue : List.of(am, a1in))
+        {
+            ArrayList<Integer> frameIndexes = new ArrayList<>(queue);
+            Collections.reverse(frameIndexes);
+            for(int frameIdx : frameIndexes)
+            {
+                if(frameIdx < frames.size())
+                    order.add(frames.get(frameIdx));
+            }
+        }
+        //frames the queues don't know, none is expected, are kept last
+        for(Frame frame : frames)
+        {
+            if(!a1in.contains(frame.getSlotIdx()) && !am.contains(frame.getSlotIdx()))
+                order.add(frame);
+        }
+        return order;
+    }
+
+    @Override
+    public void reset()
+    {
+        lastVictimQueue = null;
+        lastForgottenPageId = null;
+        a1in.clear();
+        am.clear();
+        a1out.clear();
+    }
+
+    @Override
+    public String getName() {
+        return "2q";
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+}